@@ -0,0 +1,238 @@
+package lox;
+
+/**
+ * Executable node for the operator of an Expr.Binary.
+ * Every site starts out uninitialized and, on its first execution, rewrites itself
+ * into a node specialized for the operand types it saw, such as number addition or
+ * string concatenation. A specialized node that meets other operand types replaces
+ * itself with the generic node, which handles every case, so each site settles on
+ * a single monomorphic implementation.
+ */
+abstract class BinaryOp {
+    static final BinaryOp UNINITIALIZED = new Uninitialized();
+    static final BinaryOp GENERIC = new Generic();
+
+    /**
+     * Applies the operator to already evaluated operands.
+     *
+     * @param site The expression this node belongs to
+     * @param left The value of the left operand
+     * @param right The value of the right operand
+     * @return The result of the operation
+     */
+    abstract Object execute(Expr.Binary site, Object left, Object right);
+
+    // Gives up on the specialization of a site after a type miss.
+    static Object generalize(Expr.Binary site, Object left, Object right) {
+        site.op = GENERIC;
+        return GENERIC.execute(site, left, right);
+    }
+
+    static boolean isEqual(Object left, Object right) {
+        if (left == null && right == null) return true;
+        if (left == null) return false;
+        if (left instanceof Rope || right instanceof Rope) return Rope.isEqual(left, right);
+        return left.equals(right);
+    }
+
+    private static class Uninitialized extends BinaryOp {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            BinaryOp op = specialize(site.operator.type, left, right);
+            site.op = op;
+            return op.execute(site, left, right);
+        }
+
+        private static BinaryOp specialize(TokenType operator, Object left, Object right) {
+            if (operator == TokenType.EQUAL_EQUAL) return EQUAL;
+            if (operator == TokenType.BANG_EQUAL) return NOT_EQUAL;
+
+            if (left instanceof CharSequence && right instanceof CharSequence) {
+                return operator == TokenType.PLUS ? STRING_CONCAT : GENERIC;
+            }
+            if (!(left instanceof Double) || !(right instanceof Double)) return GENERIC;
+
+            switch (operator) {
+                case PLUS: return NUMBER_ADD;
+                case MINUS: return NUMBER_SUBTRACT;
+                case STAR: return NUMBER_MULTIPLY;
+                case SLASH: return NUMBER_DIVIDE;
+                case GREATER: return NUMBER_GREATER;
+                case GREATER_EQUAL: return NUMBER_GREATER_EQUAL;
+                case LESS: return NUMBER_LESS;
+                case LESS_EQUAL: return NUMBER_LESS_EQUAL;
+                default: return GENERIC;
+            }
+        }
+    }
+
+    static final BinaryOp NUMBER_ADD = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left + (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp STRING_CONCAT = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof CharSequence && right instanceof CharSequence) {
+                return Rope.concat((CharSequence) left, (CharSequence) right);
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_SUBTRACT = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left - (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_MULTIPLY = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left * (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_DIVIDE = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double && (double) right != 0.0) {
+                return (double) left / (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_GREATER = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left > (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_GREATER_EQUAL = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left >= (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_LESS = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left < (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp NUMBER_LESS_EQUAL = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            if (left instanceof Double && right instanceof Double) {
+                return (double) left <= (double) right;
+            }
+            return generalize(site, left, right);
+        }
+    };
+
+    static final BinaryOp EQUAL = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            return isEqual(left, right);
+        }
+    };
+
+    static final BinaryOp NOT_EQUAL = new BinaryOp() {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            return !isEqual(left, right);
+        }
+    };
+
+    // Handles every operator and operand type, reporting type errors.
+    private static class Generic extends BinaryOp {
+        @Override
+        Object execute(Expr.Binary site, Object left, Object right) {
+            return apply(site.operator, left, right);
+        }
+    }
+
+    /**
+     * Applies a binary operator to operands of any type, with the semantics and
+     * error messages of the language. Shared by the generic node and compiled code.
+     *
+     * @param operator The operator, which errors are reported at
+     * @param left The value of the left operand
+     * @param right The value of the right operand
+     * @return The result of the operation
+     */
+    static Object apply(Token operator, Object left, Object right) {
+        switch (operator.type) {
+            case PLUS:
+                if (left instanceof Double && right instanceof Double) {
+                    return (double) left + (double) right;
+                }
+                if (left instanceof CharSequence && right instanceof CharSequence) {
+                    return Rope.concat((CharSequence) left, (CharSequence) right);
+                }
+                throw new RuntimeError(operator, "Operands must be two numbers or two strings.");
+            case MINUS:
+                checkNumberOperands(operator, left, right);
+                return (double) left - (double) right;
+            case SLASH:
+                checkNumberOperands(operator, left, right);
+                if ((double) right == 0.0) {
+                    throw new RuntimeError(operator, "Division by zero.");
+                }
+                return (double) left / (double) right;
+            case STAR:
+                checkNumberOperands(operator, left, right);
+                return (double) left * (double) right;
+            case GREATER:
+                checkNumberOperands(operator, left, right);
+                return (double) left > (double) right;
+            case GREATER_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double) left >= (double) right;
+            case LESS:
+                checkNumberOperands(operator, left, right);
+                return (double) left < (double) right;
+            case LESS_EQUAL:
+                checkNumberOperands(operator, left, right);
+                return (double) left <= (double) right;
+            case EQUAL_EQUAL:
+                return isEqual(left, right);
+            case BANG_EQUAL:
+                return !isEqual(left, right);
+        }
+
+        return null;
+    }
+
+    private static void checkNumberOperands(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) return;
+
+        throw new RuntimeError(operator, "Operands must be numbers.");
+    }
+}
@@ -0,0 +1,21 @@
+package lox;
+
+/**
+ * Describes where a function finds one of the variables it closes over when the
+ * closure is created: either a slot in the creating function's frame chain, or one
+ * of the creating function's own captures.
+ */
+class Capture {
+    // Whether the variable is a local of the function creating the closure
+    final boolean local;
+    // Frames between the creating scope and the declaring scope, for locals
+    final int depth;
+    // Slot of the local, or index into the creating function's captures
+    final int index;
+
+    Capture(boolean local, int depth, int index) {
+        this.local = local;
+        this.depth = depth;
+        this.index = index;
+    }
+}
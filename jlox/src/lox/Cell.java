@@ -0,0 +1,14 @@
+package lox;
+
+/**
+ * A mutable box for a local that closures capture and that can be reassigned.
+ * The declaring frame and every closure share the same cell, so all of them see
+ * each other's writes. Locals that are never reassigned are captured by value instead.
+ */
+class Cell {
+    Object value;
+
+    Cell(Object value) {
+        this.value = value;
+    }
+}
@@ -0,0 +1,417 @@
+package lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal writer for JVM class files, covering what the JitCompiler generates:
+ * one class with static fields and methods whose code uses no exception handlers.
+ * Classes are written as version 49, which is verified by type inference, so the
+ * code needs no stack map frames. The operand stack depth is tracked as
+ * instructions are emitted to compute max_stack.
+ */
+final class ClassAssembler {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_PRIVATE = 0x0002;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    // Opcodes used by the JitCompiler
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int ICONST_1 = 0x04;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC_W = 0x13;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int DUP_X1 = 0x5a;
+    static final int DUP_X2 = 0x5b;
+    static final int DUP2 = 0x5c;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int PUTSTATIC = 0xb3;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int ATHROW = 0xbf;
+    static final int CHECKCAST = 0xc0;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    /** Thrown when code does not fit the limits of a class file. */
+    static final class TooLargeException extends RuntimeException {
+        TooLargeException(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /** A position in the code of a method that jumps can target. */
+    static final class Label {
+        private int position = -1;
+        // Stack depth on entry, or -1 until a jump to the label is emitted
+        private int stack = -1;
+        private final List<Integer> fixups = new ArrayList<>();
+    }
+
+    /** The code of one method, written instruction by instruction. */
+    final class Code {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final List<Label> labels = new ArrayList<>();
+        private int stack = 0;
+        private int maxStack = 0;
+
+        private void adjust(int delta) {
+            stack += delta;
+            if (stack > maxStack) maxStack = stack;
+        }
+
+        private void u1(int value) {
+            bytes.write(value);
+        }
+
+        private void u2(int value) {
+            bytes.write(value >> 8);
+            bytes.write(value);
+        }
+
+        /**
+         * Emits an instruction that has no operands.
+         *
+         * @param opcode The instruction
+         * @param delta How the instruction changes the stack depth
+         */
+        void op(int opcode, int delta) {
+            u1(opcode);
+            adjust(delta);
+        }
+
+        void intConstant(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(ICONST_0 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(BIPUSH);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(SIPUSH);
+                u2(value);
+            } else {
+                u1(LDC_W);
+                u2(integer(value));
+            }
+            adjust(1);
+        }
+
+        void stringConstant(String value) {
+            u1(LDC_W);
+            u2(string(value));
+            adjust(1);
+        }
+
+        void local(int opcode, int index) {
+            u1(opcode);
+            u1(index);
+            adjust(opcode == ALOAD ? 1 : -1);
+        }
+
+        void type(int opcode, String internalName) {
+            u1(opcode);
+            u2(classRef(internalName));
+            if (opcode == NEW) adjust(1);
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            int size = descriptor.equals("J") || descriptor.equals("D") ? 2 : 1;
+            u1(opcode);
+            u2(memberRef(CONSTANT_FIELDREF, owner, name, descriptor));
+            switch (opcode) {
+                case GETSTATIC: adjust(size); break;
+                case PUTSTATIC: adjust(-size); break;
+                case GETFIELD: adjust(size - 1); break;
+                case PUTFIELD: adjust(-size - 1); break;
+                default: throw new IllegalArgumentException("Not a field instruction " + opcode);
+            }
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            int arguments = argumentSize(descriptor);
+            if (opcode == INVOKEINTERFACE) {
+                u1(opcode);
+                u2(memberRef(CONSTANT_INTERFACE_METHODREF, owner, name, descriptor));
+                u1(arguments + 1);
+                u1(0);
+            } else {
+                u1(opcode);
+                u2(memberRef(CONSTANT_METHODREF, owner, name, descriptor));
+            }
+
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            adjust(returnSize(descriptor) - arguments - receiver);
+        }
+
+        void jump(int opcode, Label target) {
+            u1(opcode);
+            adjust(opcode == GOTO ? 0 : -1);
+            target.stack = stack;
+            target.fixups.add(bytes.size() - 1);
+            u2(0);
+            if (!labels.contains(target)) labels.add(target);
+        }
+
+        void mark(Label label) {
+            label.position = bytes.size();
+            if (label.stack >= 0) stack = label.stack;
+            if (!labels.contains(label)) labels.add(label);
+        }
+
+        /**
+         * Finishes the method once all of its code has been emitted.
+         *
+         * @param maxLocals The number of local variable slots the code uses
+         */
+        void end(int maxLocals) {
+            byte[] code = bytes.toByteArray();
+            for (Label label : labels) {
+                for (int fixup : label.fixups) {
+                    int offset = label.position - fixup;
+                    if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                        throw new TooLargeException("Jump offset out of range.");
+                    }
+                    code[fixup + 1] = (byte) (offset >> 8);
+                    code[fixup + 2] = (byte) offset;
+                }
+            }
+            if (code.length > 0xffff) throw new TooLargeException("Method too large.");
+
+            try {
+                methods.writeShort(utf8("Code"));
+                methods.writeInt(12 + code.length);
+                methods.writeShort(maxStack);
+                methods.writeShort(maxLocals);
+                methods.writeInt(code.length);
+                methods.write(code);
+                methods.writeShort(0); // Exception table.
+                methods.writeShort(0); // Attributes.
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final ByteArrayOutputStream poolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream pool = new DataOutputStream(poolBytes);
+    private final Map<String, Integer> poolIndices = new HashMap<>();
+    private int poolCount = 1;
+
+    private final ByteArrayOutputStream fieldBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fields = new DataOutputStream(fieldBytes);
+    private int fieldCount = 0;
+
+    private final ByteArrayOutputStream methodBytes = new ByteArrayOutputStream();
+    private final DataOutputStream methods = new DataOutputStream(methodBytes);
+    private int methodCount = 0;
+
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+
+    /**
+     * Starts a public final class.
+     *
+     * @param name Internal name of the class, such as "lox/Example"
+     * @param superName Internal name of the superclass
+     * @param interfaceNames Internal names of the implemented interfaces
+     */
+    ClassAssembler(String name, String superName, String... interfaceNames) {
+        this.thisClass = classRef(name);
+        this.superClass = classRef(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classRef(interfaceNames[i]);
+        }
+    }
+
+    void field(int access, String name, String descriptor) {
+        try {
+            fields.writeShort(access);
+            fields.writeShort(utf8(name));
+            fields.writeShort(utf8(descriptor));
+            fields.writeShort(0);
+            fieldCount++;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Starts a method. Its Code must be ended before the next method is started.
+     */
+    Code method(int access, String name, String descriptor) {
+        try {
+            methods.writeShort(access);
+            methods.writeShort(utf8(name));
+            methods.writeShort(utf8(descriptor));
+            methods.writeShort(1); // The Code attribute.
+            methodCount++;
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return new Code();
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(poolCount);
+            poolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(fieldCount);
+            fieldBytes.writeTo(out);
+            out.writeShort(methodCount);
+            methodBytes.writeTo(out);
+            out.writeShort(0); // Attributes.
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Returns the index of a pool entry, adding it with the writer if it is new
+    private int entry(String key, PoolWriter writer) {
+        Integer index = poolIndices.get(key);
+        if (index != null) return index;
+
+        if (poolCount == 0xffff) throw new TooLargeException("Too many constants.");
+        try {
+            writer.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolIndices.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private interface PoolWriter {
+        void write() throws IOException;
+    }
+
+    private int utf8(String value) {
+        return entry("U" + value, () -> {
+            pool.writeByte(CONSTANT_UTF8);
+            pool.writeUTF(value);
+        });
+    }
+
+    private int integer(int value) {
+        return entry("I" + value, () -> {
+            pool.writeByte(CONSTANT_INTEGER);
+            pool.writeInt(value);
+        });
+    }
+
+    private int classRef(String internalName) {
+        int name = utf8(internalName);
+        return entry("C" + internalName, () -> {
+            pool.writeByte(CONSTANT_CLASS);
+            pool.writeShort(name);
+        });
+    }
+
+    private int string(String value) {
+        int utf8 = utf8(value);
+        return entry("S" + value, () -> {
+            pool.writeByte(CONSTANT_STRING);
+            pool.writeShort(utf8);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classRef(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int nameAndType = entry("N" + name + " " + descriptor, () -> {
+            pool.writeByte(CONSTANT_NAME_AND_TYPE);
+            pool.writeShort(nameIndex);
+            pool.writeShort(descriptorIndex);
+        });
+        return entry("M" + tag + owner + "." + name + descriptor, () -> {
+            pool.writeByte(tag);
+            pool.writeShort(ownerIndex);
+            pool.writeShort(nameAndType);
+        });
+    }
+
+    // Stack slots taken by the arguments of a method descriptor
+    private static int argumentSize(String descriptor) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                size += 2;
+                i++;
+                continue;
+            }
+
+            while (descriptor.charAt(i) == '[') i++;
+            if (descriptor.charAt(i) == 'L') i = descriptor.indexOf(';', i);
+            size++;
+            i++;
+        }
+        return size;
+    }
+
+    private static int returnSize(String descriptor) {
+        char c = descriptor.charAt(descriptor.indexOf(')') + 1);
+        if (c == 'V') return 0;
+        if (c == 'J' || c == 'D') return 2;
+        return 1;
+    }
+}
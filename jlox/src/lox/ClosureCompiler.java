@@ -0,0 +1,637 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static lox.Completion.NORMAL;
+
+/**
+ * Execution engine that compiles resolved statements once into a tree of small
+ * executor objects instead of visiting the AST on every run.
+ * Each executor has its operands, frame slots and operator already bound, so running
+ * code makes no visitor dispatch and no switch on token types. Compiled code shares
+ * its runtime with the Interpreter: globals, frames, functions, classes and instances
+ * are the same objects, so either engine can call functions created by the other.
+ */
+class ClosureCompiler {
+    /** A compiled expression. */
+    interface ExprNode {
+        Object execute(Frame frame);
+    }
+
+    /**
+     * A compiled expression that always yields a number. Nodes that consume numbers
+     * call executeNumber, so intermediate results are never boxed.
+     */
+    interface NumberNode extends ExprNode {
+        double executeNumber(Frame frame);
+
+        @Override
+        default Object execute(Frame frame) {
+            return executeNumber(frame);
+        }
+    }
+
+    /** A compiled statement, which yields a completion as Interpreter statements do. */
+    interface StmtNode {
+        Object execute(Frame frame);
+    }
+
+    /** The compiled arguments of a call, which evaluates them and calls the target. */
+    private interface CallNode {
+        Object execute(Frame frame, LoxInstance receiver, LoxFunction method, Object callee);
+    }
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+    // Compiles function bodies to JVM bytecode when enabled, null otherwise
+    private final JitCompiler jit;
+
+    ClosureCompiler(Interpreter interpreter, boolean jit) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+        this.jit = jit ? new JitCompiler(this, interpreter) : null;
+    }
+
+    /**
+     * Compiles and runs a program, reporting any runtime error.
+     *
+     * @param statements The resolved top-level statements
+     */
+    void run(List<Stmt> statements) {
+        StmtNode program = block(statements);
+        try {
+            program.execute(new Frame(new Object[0], 0));
+        } catch (RuntimeError error) {
+            Lox.runtimeError(error);
+        }
+    }
+
+    /**
+     * Compiles the body of a function and attaches it to the declaration, so every
+     * LoxFunction created from it runs the compiled code. With the JIT enabled the
+     * body is compiled to JVM bytecode, falling back to executors if the JIT cannot
+     * compile it.
+     *
+     * @param declaration The function to compile
+     */
+    void compileFunction(Stmt.Function declaration) {
+        if (declaration.compiled != null) return;
+
+        StmtNode compiled = jit == null ? null : jit.compile(declaration);
+        declaration.compiled = compiled != null ? compiled : block(declaration.body);
+    }
+
+    /**
+     * Compiles a loop that is already running in the Interpreter and attaches it to
+     * the loop, so the Interpreter can continue it in compiled code.
+     *
+     * @param loop The loop to compile
+     */
+    void compileLoop(Stmt.While loop) {
+        if (loop.compiled != null) return;
+
+        StmtNode compiled = jit == null ? null : jit.compile(loop);
+        loop.compiled = compiled != null ? compiled : compile(loop);
+    }
+
+    private StmtNode block(List<Stmt> statements) {
+        StmtNode[] nodes = new StmtNode[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(statements.get(i));
+        }
+
+        if (nodes.length == 1) return nodes[0];
+        return frame -> {
+            for (StmtNode node : nodes) {
+                Object completion = node.execute(frame);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        };
+    }
+
+    private StmtNode compile(Stmt stmt) {
+        if (stmt instanceof Stmt.Expression) return expressionStmt((Stmt.Expression) stmt);
+        if (stmt instanceof Stmt.Print) return printStmt((Stmt.Print) stmt);
+        if (stmt instanceof Stmt.Var) return varStmt((Stmt.Var) stmt);
+        if (stmt instanceof Stmt.Block) return blockStmt((Stmt.Block) stmt);
+        if (stmt instanceof Stmt.If) return ifStmt((Stmt.If) stmt);
+        if (stmt instanceof Stmt.While) return whileStmt((Stmt.While) stmt);
+        if (stmt instanceof Stmt.Function) return functionStmt((Stmt.Function) stmt);
+        if (stmt instanceof Stmt.Return) return returnStmt((Stmt.Return) stmt);
+        if (stmt instanceof Stmt.Class) return classStmt((Stmt.Class) stmt);
+        throw new IllegalArgumentException("Unknown statement " + stmt);
+    }
+
+    private ExprNode compile(Expr expr) {
+        if (expr instanceof Expr.Literal) return literal((Expr.Literal) expr);
+        if (expr instanceof Expr.Grouping) return compile(((Expr.Grouping) expr).expression);
+        if (expr instanceof Expr.Binary) return binary((Expr.Binary) expr);
+        if (expr instanceof Expr.Unary) return unary((Expr.Unary) expr);
+        if (expr instanceof Expr.Logical) return logical((Expr.Logical) expr);
+        if (expr instanceof Expr.Variable) return read((Expr.Variable) expr, ((Expr.Variable) expr).name);
+        if (expr instanceof Expr.Assign) return assign((Expr.Assign) expr);
+        if (expr instanceof Expr.Call) return call((Expr.Call) expr, false);
+        if (expr instanceof Expr.Get) return get((Expr.Get) expr);
+        if (expr instanceof Expr.Set) return set((Expr.Set) expr);
+        if (expr instanceof Expr.This) return read((Expr.This) expr, ((Expr.This) expr).keyword);
+        if (expr instanceof Expr.Super) return superExpr((Expr.Super) expr);
+        throw new IllegalArgumentException("Unknown expression " + expr);
+    }
+
+    private StmtNode expressionStmt(Stmt.Expression stmt) {
+        ExprNode expression = compile(stmt.expression);
+        return frame -> {
+            expression.execute(frame);
+            return NORMAL;
+        };
+    }
+
+    private StmtNode printStmt(Stmt.Print stmt) {
+        ExprNode expression = compile(stmt.expression);
+        return frame -> {
+            System.out.println(Interpreter.stringify(expression.execute(frame)));
+            return NORMAL;
+        };
+    }
+
+    private StmtNode varStmt(Stmt.Var stmt) {
+        ExprNode initializer = stmt.initializer == null
+                ? frame -> null
+                : compile(stmt.initializer);
+
+        if (stmt.slot < 0) {
+            Symbol name = stmt.name.symbol;
+            return frame -> {
+                globals.define(name, initializer.execute(frame));
+                return NORMAL;
+            };
+        }
+
+        int slot = stmt.slot;
+        if (stmt.cell) {
+            return frame -> {
+                frame.slots[slot] = new Cell(initializer.execute(frame));
+                return NORMAL;
+            };
+        }
+        return frame -> {
+            frame.slots[slot] = initializer.execute(frame);
+            return NORMAL;
+        };
+    }
+
+    private StmtNode blockStmt(Stmt.Block stmt) {
+        StmtNode body = block(stmt.statements);
+        if (!stmt.needsFrame) return body;
+
+        int slots = stmt.slots;
+        return frame -> body.execute(new Frame(frame, slots));
+    }
+
+    private StmtNode ifStmt(Stmt.If stmt) {
+        ExprNode condition = compile(stmt.condition);
+        StmtNode thenBranch = compile(stmt.thenBranch);
+
+        if (stmt.elseBranch == null) {
+            return frame -> {
+                if (Interpreter.isTruthy(condition.execute(frame))) return thenBranch.execute(frame);
+                return NORMAL;
+            };
+        }
+
+        StmtNode elseBranch = compile(stmt.elseBranch);
+        return frame -> {
+            if (Interpreter.isTruthy(condition.execute(frame))) {
+                return thenBranch.execute(frame);
+            } else {
+                return elseBranch.execute(frame);
+            }
+        };
+    }
+
+    private StmtNode whileStmt(Stmt.While stmt) {
+        ExprNode condition = compile(stmt.condition);
+        StmtNode body = compile(stmt.body);
+        return frame -> {
+            while (Interpreter.isTruthy(condition.execute(frame))) {
+                Object completion = body.execute(frame);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        };
+    }
+
+    private StmtNode functionStmt(Stmt.Function stmt) {
+        compileFunction(stmt);
+        return frame -> {
+            // Bind the name first so that a function capturing itself sees its own cell.
+            define(frame, stmt, null);
+            initialize(frame, stmt, new LoxFunction(stmt, frame.capture(stmt), false));
+            return NORMAL;
+        };
+    }
+
+    private StmtNode returnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return frame -> null;
+
+        ExprNode value = stmt.tailCall ? call((Expr.Call) stmt.value, true) : compile(stmt.value);
+        return value::execute;
+    }
+
+    private StmtNode classStmt(Stmt.Class stmt) {
+        ExprNode superclassNode = stmt.superclass == null ? null : compile(stmt.superclass);
+        for (Stmt.Function method : stmt.methods) {
+            compileFunction(method);
+        }
+
+        return frame -> {
+            Object superclass = null;
+            if (superclassNode != null) {
+                superclass = superclassNode.execute(frame);
+                if (!(superclass instanceof LoxClass)) {
+                    throw new RuntimeError(stmt.superclass.name,
+                            "Superclass must be a class.");
+                }
+            }
+
+            define(frame, stmt, null);
+
+            Frame methodFrame = frame;
+            if (superclass != null) {
+                methodFrame = new Frame(frame, 1);
+                methodFrame.slots[0] = superclass;
+            }
+
+            Map<Symbol, LoxFunction> methods = new HashMap<>();
+            for (Stmt.Function method : stmt.methods) {
+                LoxFunction function = new LoxFunction(method, methodFrame.capture(method),
+                        method.name.lexeme.equals("init"));
+                methods.put(method.name.symbol, function);
+            }
+
+            initialize(frame, stmt, new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods));
+            return NORMAL;
+        };
+    }
+
+    // Binds a declared name in the frame, or in globals for top-level declarations
+    private void define(Frame frame, Stmt.Declaration stmt, Object value) {
+        if (stmt.slot < 0) {
+            globals.define(stmt.name.symbol, value);
+        } else {
+            frame.slots[stmt.slot] = stmt.cell ? new Cell(value) : value;
+        }
+    }
+
+    // Sets the value of a name that define() has already bound
+    private void initialize(Frame frame, Stmt.Declaration stmt, Object value) {
+        if (stmt.slot < 0) {
+            globals.define(stmt.name.symbol, value);
+        } else if (stmt.cell) {
+            ((Cell) frame.slots[stmt.slot]).value = value;
+        } else {
+            frame.slots[stmt.slot] = value;
+        }
+    }
+
+    private ExprNode literal(Expr.Literal expr) {
+        Object value = expr.value;
+        return frame -> value;
+    }
+
+    private ExprNode binary(Expr.Binary expr) {
+        ExprNode left = compile(expr.left);
+        ExprNode right = compile(expr.right);
+        Token operator = expr.operator;
+
+        if (expr.number || Interpreter.isComparison(operator) && (expr.left.number || expr.right.number)) {
+            NumberNode rightNumber = number(expr.right, right, operator);
+            if (expr.left.number) {
+                NumberNode leftNumber = number(expr.left, left, operator);
+                return expr.number
+                        ? arithmetic(operator, leftNumber, rightNumber)
+                        : comparison(operator, leftNumber, rightNumber);
+            }
+            return expr.number
+                    ? arithmetic(operator, left, rightNumber)
+                    : comparison(operator, left, rightNumber);
+        }
+
+        return frame -> {
+            Object leftValue = left.execute(frame);
+            Object rightValue = right.execute(frame);
+            return expr.op.execute(expr, leftValue, rightValue);
+        };
+    }
+
+    private static NumberNode arithmetic(Token operator, NumberNode left, NumberNode right) {
+        switch (operator.type) {
+            case PLUS: return frame -> left.executeNumber(frame) + right.executeNumber(frame);
+            case MINUS: return frame -> left.executeNumber(frame) - right.executeNumber(frame);
+            case STAR: return frame -> left.executeNumber(frame) * right.executeNumber(frame);
+            default:
+                return frame -> {
+                    double value = left.executeNumber(frame);
+                    double divisor = right.executeNumber(frame);
+                    if (divisor == 0.0) throw new RuntimeError(operator, "Division by zero.");
+                    return value / divisor;
+                };
+        }
+    }
+
+    // A boxed left operand is checked only once the right one has been evaluated.
+    private static NumberNode arithmetic(Token operator, ExprNode left, NumberNode right) {
+        switch (operator.type) {
+            case PLUS:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) + rightValue;
+                };
+            case MINUS:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) - rightValue;
+                };
+            case STAR:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) * rightValue;
+                };
+            default:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double divisor = right.executeNumber(frame);
+                    double dividend = Interpreter.unbox(operator, value);
+                    if (divisor == 0.0) throw new RuntimeError(operator, "Division by zero.");
+                    return dividend / divisor;
+                };
+        }
+    }
+
+    private static ExprNode comparison(Token operator, NumberNode left, NumberNode right) {
+        switch (operator.type) {
+            case GREATER: return frame -> left.executeNumber(frame) > right.executeNumber(frame);
+            case GREATER_EQUAL: return frame -> left.executeNumber(frame) >= right.executeNumber(frame);
+            case LESS: return frame -> left.executeNumber(frame) < right.executeNumber(frame);
+            default: return frame -> left.executeNumber(frame) <= right.executeNumber(frame);
+        }
+    }
+
+    private static ExprNode comparison(Token operator, ExprNode left, NumberNode right) {
+        switch (operator.type) {
+            case GREATER:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) > rightValue;
+                };
+            case GREATER_EQUAL:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) >= rightValue;
+                };
+            case LESS:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) < rightValue;
+                };
+            default:
+                return frame -> {
+                    Object value = left.execute(frame);
+                    double rightValue = right.executeNumber(frame);
+                    return Interpreter.unbox(operator, value) <= rightValue;
+                };
+        }
+    }
+
+    private ExprNode unary(Expr.Unary expr) {
+        ExprNode right = compile(expr.right);
+        Token operator = expr.operator;
+
+        if (operator.type == TokenType.BANG) {
+            return frame -> !Interpreter.isTruthy(right.execute(frame));
+        }
+        if (expr.right.number) {
+            NumberNode number = number(expr.right, right, operator);
+            return (NumberNode) frame -> -number.executeNumber(frame);
+        }
+        return (NumberNode) frame -> {
+            Object value = right.execute(frame);
+            Interpreter.checkNumberOperand(operator, value);
+            return -(double) value;
+        };
+    }
+
+    // Reads an operand of a numeric operator as a number, failing if it is not one.
+    // TypeInference has proven that an operand with the number flag is one, so it is
+    // only cast.
+    private static NumberNode number(Expr expr, ExprNode operand, Token operator) {
+        if (operand instanceof NumberNode) return (NumberNode) operand;
+        if (expr.number) return frame -> (double) operand.execute(frame);
+        return frame -> Interpreter.unbox(operator, operand.execute(frame));
+    }
+
+    private ExprNode logical(Expr.Logical expr) {
+        ExprNode left = compile(expr.left);
+        ExprNode right = compile(expr.right);
+
+        if (expr.operator.type == TokenType.OR) {
+            return frame -> {
+                Object value = left.execute(frame);
+                return Interpreter.isTruthy(value) ? value : right.execute(frame);
+            };
+        }
+        return frame -> {
+            Object value = left.execute(frame);
+            return Interpreter.isTruthy(value) ? right.execute(frame) : value;
+        };
+    }
+
+    private ExprNode read(Expr.Resolvable expr, Token name) {
+        int slot = expr.slot;
+        int depth = expr.depth;
+
+        if (depth == Expr.Resolvable.GLOBAL) {
+            return frame -> globals.get(name);
+        }
+        if (depth == Expr.Resolvable.CAPTURED) {
+            if (expr.cell) return frame -> ((Cell) frame.captures[slot]).value;
+            return frame -> frame.captures[slot];
+        }
+        if (expr.cell) return frame -> ((Cell) frame.getAt(depth, slot)).value;
+        if (depth == 0) return frame -> frame.slots[slot];
+        return frame -> frame.getAt(depth, slot);
+    }
+
+    private ExprNode assign(Expr.Assign expr) {
+        ExprNode value = compile(expr.value);
+        int slot = expr.slot;
+        int depth = expr.depth;
+
+        if (depth == Expr.Resolvable.GLOBAL) {
+            Token name = expr.name;
+            return frame -> {
+                Object result = value.execute(frame);
+                globals.assign(name, result);
+                return result;
+            };
+        }
+        if (depth == Expr.Resolvable.CAPTURED) {
+            return frame -> ((Cell) frame.captures[slot]).value = value.execute(frame);
+        }
+        if (expr.cell) {
+            return frame -> ((Cell) frame.getAt(depth, slot)).value = value.execute(frame);
+        }
+        if (depth == 0) return frame -> frame.slots[slot] = value.execute(frame);
+        return frame -> {
+            Object result = value.execute(frame);
+            frame.assignAt(depth, slot, result);
+            return result;
+        };
+    }
+
+    // Compiles a call, which in tail position yields a TailCall instead of making the call
+    private ExprNode call(Expr.Call expr, boolean tail) {
+        CallNode arguments = arguments(expr, tail);
+        if (expr.invoked != null) return invoke(expr.invoked, arguments);
+        if (expr.invokedSuper != null) return invokeSuper(expr.invokedSuper, arguments);
+
+        ExprNode callee = compile(expr.callee);
+        return frame -> arguments.execute(frame, null, null, callee.execute(frame));
+    }
+
+    // Passes up to three arguments to the fixed-arity entry points instead of collecting them
+    private CallNode arguments(Expr.Call expr, boolean tail) {
+        ExprNode[] arguments = new ExprNode[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) {
+            arguments[i] = compile(expr.arguments.get(i));
+        }
+        Token paren = expr.paren;
+
+        if (tail) {
+            return (frame, receiver, method, callee) -> Interpreter.tailCall(interpreter, paren,
+                    receiver, method, callee, evaluate(arguments, frame));
+        }
+
+        switch (arguments.length) {
+            case 0:
+                return (frame, receiver, method, callee) ->
+                        Interpreter.call0(interpreter, paren, receiver, method, callee);
+            case 1: {
+                ExprNode first = arguments[0];
+                return (frame, receiver, method, callee) ->
+                        Interpreter.call1(interpreter, paren, receiver, method, callee,
+                                first.execute(frame));
+            }
+            case 2: {
+                ExprNode first = arguments[0];
+                ExprNode second = arguments[1];
+                return (frame, receiver, method, callee) -> {
+                    Object a = first.execute(frame);
+                    return Interpreter.call2(interpreter, paren, receiver, method, callee,
+                            a, second.execute(frame));
+                };
+            }
+            case 3: {
+                ExprNode first = arguments[0];
+                ExprNode second = arguments[1];
+                ExprNode third = arguments[2];
+                return (frame, receiver, method, callee) -> {
+                    Object a = first.execute(frame);
+                    Object b = second.execute(frame);
+                    return Interpreter.call3(interpreter, paren, receiver, method, callee,
+                            a, b, third.execute(frame));
+                };
+            }
+            default:
+                return (frame, receiver, method, callee) -> Interpreter.call(interpreter, paren,
+                        receiver, method, callee, evaluate(arguments, frame));
+        }
+    }
+
+    private static Object[] evaluate(ExprNode[] arguments, Frame frame) {
+        Object[] values = new Object[arguments.length];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = arguments[i].execute(frame);
+        }
+        return values;
+    }
+
+    // Calls a method on an instance without binding it, unless a field shadows the method
+    private ExprNode invoke(Expr.Get property, CallNode arguments) {
+        ExprNode object = compile(property.object);
+        Token name = property.name;
+        PropertyCache cache = property.cache;
+
+        return frame -> {
+            Object value = object.execute(frame);
+            if (!(value instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have properties.");
+            }
+
+            LoxInstance instance = (LoxInstance) value;
+            LoxFunction method = cache.method(instance, name);
+            Object callee = method == null ? cache.get(instance, name) : null;
+            return arguments.execute(frame, instance, method, callee);
+        };
+    }
+
+    private ExprNode get(Expr.Get expr) {
+        ExprNode object = compile(expr.object);
+        Token name = expr.name;
+        PropertyCache cache = expr.cache;
+        return frame -> {
+            Object value = object.execute(frame);
+            if (value instanceof LoxInstance) {
+                return cache.get((LoxInstance) value, name);
+            }
+
+            throw new RuntimeError(name, "Only instances have properties.");
+        };
+    }
+
+    private ExprNode set(Expr.Set expr) {
+        ExprNode object = compile(expr.object);
+        ExprNode value = compile(expr.value);
+        Token name = expr.name;
+        PropertyCache cache = expr.cache;
+        return frame -> {
+            Object instance = object.execute(frame);
+
+            if (!(instance instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have fields.");
+            }
+
+            Object result = value.execute(frame);
+            cache.set((LoxInstance) instance, name, result);
+            return result;
+        };
+    }
+
+    private ExprNode superExpr(Expr.Super expr) {
+        ExprNode superclass = read(expr, expr.keyword);
+        ExprNode receiver = read(expr.receiver, expr.receiver.keyword);
+        return frame -> Interpreter.superMethod(expr, (LoxClass) superclass.execute(frame))
+                .bind((LoxInstance) receiver.execute(frame));
+    }
+
+    // Calls a superclass method on 'this' without binding it
+    private ExprNode invokeSuper(Expr.Super callee, CallNode arguments) {
+        ExprNode superclass = read(callee, callee.keyword);
+        ExprNode receiver = read(callee.receiver, callee.receiver.keyword);
+
+        return frame -> {
+            LoxFunction method = Interpreter.superMethod(callee, (LoxClass) superclass.execute(frame));
+            LoxInstance instance = (LoxInstance) receiver.execute(frame);
+            return arguments.execute(frame, instance, method, null);
+        };
+    }
+}
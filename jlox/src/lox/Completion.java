@@ -0,0 +1,14 @@
+package lox;
+
+/**
+ * Result of executing a statement. A statement that finishes normally yields
+ * NORMAL, and a return statement yields the value it returns, which each enclosing
+ * statement passes up as soon as it sees it until the function call receives it.
+ * Returning this way, instead of throwing, leaves exceptions to runtime errors.
+ */
+final class Completion {
+    static final Object NORMAL = new Object();
+
+    private Completion() {
+    }
+}
@@ -1,68 +1,42 @@
 package lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
+/**
+ * Storage for global variables, indexed by the id of their name's Symbol.
+ * Locals are resolved to frame slots, so a name that reaches here is either a
+ * global or undefined and there is no enclosing scope to search.
+ */
 public class Environment {
-    final Environment enclosing;
+    // Stands in for nil, since an empty element means the variable is undefined
+    private static final Object NIL = new Object();
 
-    Environment() {
-        this.enclosing = null;
-    }
-
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
-    }
+    private Object[] values = new Object[64];
 
-    private final Map<String, Object> values = new HashMap<>();
-
-    void define(String name, Object value) {
-        values.put(name, value);
+    void define(Symbol name, Object value) {
+        if (name.id >= values.length) {
+            values = Arrays.copyOf(values, Math.max(values.length * 2, name.id + 1));
+        }
+        values[name.id] = value == null ? NIL : value;
     }
 
     Object get(Token name) {
-        Object value = getValue(name);
+        int id = name.symbol.id;
+        Object value = id < values.length ? values[id] : null;
         if (value == null) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+        if (value == NIL) {
             throw new RuntimeError(name, "Uninitialized variable '" + name.lexeme + "'.");
         }
         return value;
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
-    }
-
-    private Environment ancestor(int distance) {
-        Environment environment = this;
-        for (int i = 0; i < distance; i++) {
-            environment = environment.enclosing;
-        }
-        return environment;
-    }
-
-    private Object getValue(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
-        if (enclosing != null) {
-            return enclosing.get(name);
-        }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
-    }
-
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        int id = name.symbol.id;
+        if (id >= values.length || values[id] == null) {
+            throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
-    }
-
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+        values[id] = value == null ? NIL : value;
     }
 }
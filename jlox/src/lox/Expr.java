@@ -3,9 +3,11 @@ package lox;
 import java.util.List;
 import java.util.Set;
 
+// Child nodes are not final, so that the passes in lox.opt can rewrite them in place
+// and keep the Resolver's annotations on the nodes around them.
 public abstract class Expr {
 
-    interface Visitor<R> {
+    public interface Visitor<R> {
         R visitAssignExpr(Assign expr);
 
         R visitBinaryExpr(Binary expr);
@@ -31,7 +33,24 @@ public abstract class Expr {
         R visitSuperExpr(Super Expr);
     }
 
-    abstract <R> R accept(Visitor<R> visitor);
+    public abstract <R> R accept(Visitor<R> visitor);
+
+    // Whether the expression yields a number, or a boolean, whenever it completes, so that
+    // engines can compute it unboxed and without checking its type. Set by TypeInference.
+    boolean number = false;
+    boolean bool = false;
+
+    public abstract static class Resolvable extends Expr {
+        static final int GLOBAL = -1;
+        static final int CAPTURED = -2;
+
+        // Number of frames between the use and the declaring scope, or GLOBAL or CAPTURED
+        int depth = GLOBAL;
+        // Index of the variable within its frame, or within the function's captures
+        int slot = -1;
+        // Whether the variable is shared with closures through a Cell
+        boolean cell = false;
+    }
 
     public static class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
@@ -40,12 +59,14 @@ public abstract class Expr {
             this.right = right;
         }
 
-        final Expr left;
-        final Token operator;
-        final Expr right;
+        public Expr left;
+        public final Token operator;
+        public Expr right;
+        // Operator node, rewritten in place as the site specializes
+        BinaryOp op = BinaryOp.UNINITIALIZED;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBinaryExpr(this);
         }
     }
@@ -55,23 +76,23 @@ public abstract class Expr {
             this.expression = expression;
         }
 
-        final Expr expression;
+        public Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGroupingExpr(this);
         }
     }
 
     public static class Literal extends Expr {
-        Literal(Object value) {
+        public Literal(Object value) {
             this.value = value;
         }
 
-        final Object value;
+        public final Object value;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLiteralExpr(this);
         }
     }
@@ -82,39 +103,39 @@ public abstract class Expr {
             this.right = right;
         }
 
-        final Token operator;
-        final Expr right;
+        public final Token operator;
+        public Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitUnaryExpr(this);
         }
     }
 
-    public static class Variable extends Expr {
+    public static class Variable extends Resolvable {
         Variable(Token name) {
             this.name = name;
         }
 
-        final Token name;
+        public final Token name;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVariableExpr(this);
         }
     }
 
-    public static class Assign extends Expr {
+    public static class Assign extends Resolvable {
         Assign(Token name, Expr value) {
             this.name = name;
             this.value = value;
         }
 
-        final Token name;
-        final Expr value;
+        public final Token name;
+        public Expr value;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitAssignExpr(this);
         }
     }
@@ -126,12 +147,12 @@ public abstract class Expr {
             this.right = right;
         }
 
-        final Token operator;
-        final Expr left;
-        final Expr right;
+        public final Token operator;
+        public Expr left;
+        public Expr right;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitLogicalExpr(this);
         }
     }
@@ -143,12 +164,16 @@ public abstract class Expr {
             this.arguments = arguments;
         }
 
-        final Expr callee;
-        final Token paren;
-        final List<Expr> arguments;
+        public Expr callee;
+        public final Token paren;
+        public final List<Expr> arguments;
+        // Property whose method the call invokes directly, when the callee is a Get
+        Get invoked;
+        // Superclass method the call invokes directly, when the callee is a Super
+        Super invokedSuper;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitCallExpr(this);
         }
     }
@@ -159,11 +184,13 @@ public abstract class Expr {
             this.name = name;
         }
 
-        final Expr object;
-        final Token name;
+        public Expr object;
+        public final Token name;
+        // Field locations for the instance shapes seen at this site
+        final PropertyCache cache = new PropertyCache();
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitGetExpr(this);
         }
     }
@@ -175,40 +202,49 @@ public abstract class Expr {
             this.value = value;
         }
 
-        final Expr object;
-        final Token name;
-        final Expr value;
+        public Expr object;
+        public final Token name;
+        public Expr value;
+        // Field locations for the instance shapes seen at this site
+        final PropertyCache cache = new PropertyCache();
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSetExpr(this);
         }
     }
 
-    public static class This extends Expr {
+    public static class This extends Resolvable {
         This(Token keyword) {
             this.keyword = keyword;
         }
 
-        final Token keyword;
+        public final Token keyword;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitThisExpr(this);
         }
     }
 
-    public static class Super extends Expr {
+    public static class Super extends Resolvable {
         Super(Token keyword, Token method) {
             this.keyword = keyword;
             this.method = method;
+            this.receiver = new This(new Token(TokenType.THIS, Symbol.intern("this"), keyword.line));
         }
 
-        final Token keyword;
-        final Token method;
+        public final Token keyword;
+        public final Token method;
+        // The implicit 'this' the method is bound to
+        public final This receiver;
+        // Method found on the superclass by the last execution, keyed by that superclass.
+        // A class statement that runs again can get a different superclass.
+        LoxClass boundClass;
+        LoxFunction boundMethod;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitSuperExpr(this);
         }
     }
@@ -0,0 +1,61 @@
+package lox;
+
+/**
+ * Storage for the local variables of one scope.
+ * The Resolver assigns every local a slot index within its scope, so variables
+ * are read and written by index instead of by name. Frames only chain within a
+ * function; variables of enclosing functions are reached through the captures
+ * of the running closure.
+ */
+class Frame {
+    final Frame enclosing;
+    final Object[] slots;
+    // Values and cells captured by the function running in this frame
+    final Object[] captures;
+
+    Frame(Object[] captures, int size) {
+        this.enclosing = null;
+        this.slots = new Object[size];
+        this.captures = captures;
+    }
+
+    Frame(Frame enclosing, int size) {
+        this.enclosing = enclosing;
+        this.slots = new Object[size];
+        this.captures = enclosing.captures;
+    }
+
+    /**
+     * Copies the variables a function closes over out of this frame, the frame the
+     * function is being created in.
+     *
+     * @param declaration The function being created
+     * @return The values and cells the new closure holds on to
+     */
+    Object[] capture(Stmt.Function declaration) {
+        Object[] captures = new Object[declaration.captures.size()];
+        for (int i = 0; i < captures.length; i++) {
+            Capture capture = declaration.captures.get(i);
+            captures[i] = capture.local
+                    ? getAt(capture.depth, capture.index)
+                    : this.captures[capture.index];
+        }
+        return captures;
+    }
+
+    Object getAt(int distance, int slot) {
+        return ancestor(distance).slots[slot];
+    }
+
+    void assignAt(int distance, int slot, Object value) {
+        ancestor(distance).slots[slot] = value;
+    }
+
+    private Frame ancestor(int distance) {
+        Frame frame = this;
+        for (int i = 0; i < distance; i++) {
+            frame = frame.enclosing;
+        }
+        return frame;
+    }
+}
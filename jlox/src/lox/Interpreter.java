@@ -1,19 +1,24 @@
 package lox;
 
 import java.util.List;
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final AstPrinter printer = new AstPrinter();
+import static lox.Completion.NORMAL;
 
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    // Frame of the innermost local scope; top-level code runs in an empty frame
+    private Frame frame = new Frame(new Object[0], 0);
+
+    // Receives a record per evaluated expression when tracing is enabled, null otherwise
+    private Tracer tracer = null;
+
+    // Counts calls and loop iterations to promote hot functions when tiering is enabled, null otherwise
+    private TieredCompiler tiers = null;
 
     Interpreter() {
-        globals.define("clock", new LoxCallable() {
+        globals.define(Symbol.intern("clock"), new LoxCallable() {
 
             @Override
             public int arity() {
@@ -21,7 +26,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
 
             @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
+            public Object call(Interpreter interpreter, Object[] arguments) {
+                return call0(interpreter);
+            }
+
+            @Override
+            public Object call0(Interpreter interpreter) {
                 return (double) System.currentTimeMillis() / 1000.0;
             }
 
@@ -42,80 +52,157 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
     }
 
-    private void execute(Stmt stmt) {
-        stmt.accept(this);
+    void setTracer(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
+    void setTiers(TieredCompiler tiers) {
+        this.tiers = tiers;
     }
 
-    public void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    // Runs the body of an interpreted function in its new frame
+    Object executeFunction(Stmt.Function declaration, Frame frame) {
+        if (tiers != null) tiers.invoked(declaration);
+        return executeBlock(declaration.body, frame);
+    }
+
+    // Returns Completion.NORMAL, or the value of a return statement the statement ran
+    private Object execute(Stmt stmt) {
+        return stmt.accept(this);
     }
 
     Object evaluate(Expr expr) {
-        printer.print(expr);
-        return expr.accept(this);
+        Object value = expr.accept(this);
+        if (tracer != null) tracer.record(expr, value);
+        return value;
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
-        if (distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private Object lookUpVariable(Token name, Expr.Resolvable expr) {
+        Object value;
+        if (expr.depth >= 0) {
+            value = frame.getAt(expr.depth, expr.slot);
+        } else if (expr.depth == Expr.Resolvable.CAPTURED) {
+            value = frame.captures[expr.slot];
         } else {
             return globals.get(name);
         }
+        return expr.cell ? ((Cell) value).value : value;
     }
 
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
+        // Numeric operands are computed unboxed, so only the final result is boxed.
+        // Tracing needs every intermediate value, so it takes the boxed path.
+        if (tracer == null) {
+            if (expr.number) return evaluateNumber(expr);
+            if (isComparison(expr.operator) && (expr.left.number || expr.right.number)) {
+                return comparison(expr);
+            }
+        }
+
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
 
-        switch (expr.operator.type) {
-            case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double) left + (double) right;
-                }
-                if (left instanceof String && right instanceof String) {
-                    return (String) left + (String) right;
-                }
-                throw new RuntimeError(expr.operator, "Operands must be two numbers or two strings.");
-            case MINUS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left - (double) right;
-            case SLASH:
-                checkNumberOperands(expr.operator, left, right);
-                if ((double) right == 0.0) {
-                    throw new RuntimeError(expr.operator, "Division by zero.");
-                }
-                return (double) left / (double) right;
-            case STAR:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left * (double) right;
+        return expr.op.execute(expr, left, right);
+    }
+
+    /**
+     * Evaluates an expression that TypeInference marked as always yielding a number,
+     * keeping the results of the arithmetic inside it unboxed.
+     *
+     * @param expr An expression whose number flag is set
+     * @return The value of the expression
+     */
+    private double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Binary) {
+            Expr.Binary binary = (Expr.Binary) expr;
+            Token operator = binary.operator;
+            if (binary.left.number) {
+                double left = evaluateNumber(binary.left);
+                return arithmetic(operator, left, numberOperand(operator, binary.right));
+            }
+
+            // A boxed left operand is checked only once the right one has been evaluated.
+            Object left = evaluate(binary.left);
+            double right = numberOperand(operator, binary.right);
+            return arithmetic(operator, unbox(operator, left), right);
+        }
+        if (expr instanceof Expr.Unary) {
+            Expr.Unary unary = (Expr.Unary) expr;
+            if (unary.right.number) return -evaluateNumber(unary.right);
+
+            Object right = evaluate(unary.right);
+            checkNumberOperand(unary.operator, right);
+            return -(double) right;
+        }
+        if (expr instanceof Expr.Grouping) return evaluateNumber(((Expr.Grouping) expr).expression);
+
+        return (double) evaluate(expr);
+    }
+
+    // Compares numbers without boxing the operands that are computed
+    private boolean comparison(Expr.Binary expr) {
+        Token operator = expr.operator;
+        if (expr.left.number) {
+            double left = evaluateNumber(expr.left);
+            return compare(operator, left, numberOperand(operator, expr.right));
+        }
+
+        Object left = evaluate(expr.left);
+        double right = numberOperand(operator, expr.right);
+        return compare(operator, unbox(operator, left), right);
+    }
+
+    // Evaluates an operand of a numeric operator, failing if it is not a number
+    private double numberOperand(Token operator, Expr expr) {
+        if (expr.number) return evaluateNumber(expr);
+        return unbox(operator, evaluate(expr));
+    }
+
+    static boolean isComparison(Token operator) {
+        switch (operator.type) {
             case GREATER:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left > (double) right;
             case GREATER_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left >= (double) right;
             case LESS:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left < (double) right;
             case LESS_EQUAL:
-                checkNumberOperands(expr.operator, left, right);
-                return (double) left <= (double) right;
-            case EQUAL_EQUAL:
-                return isEqual(left, right);
-            case BANG_EQUAL:
-                return !isEqual(left, right);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // The operations on unboxed numbers, shared with the closure engine
+
+    static double arithmetic(Token operator, double left, double right) {
+        switch (operator.type) {
+            case PLUS: return left + right;
+            case MINUS: return left - right;
+            case STAR: return left * right;
+            case SLASH:
+                if (right == 0.0) {
+                    throw new RuntimeError(operator, "Division by zero.");
+                }
+                return left / right;
+            default:
+                throw new IllegalArgumentException("Not an arithmetic operator: " + operator.lexeme);
         }
+    }
 
-        return null;
+    static boolean compare(Token operator, double left, double right) {
+        switch (operator.type) {
+            case GREATER: return left > right;
+            case GREATER_EQUAL: return left >= right;
+            case LESS: return left < right;
+            case LESS_EQUAL: return left <= right;
+            default:
+                throw new IllegalArgumentException("Not a comparison operator: " + operator.lexeme);
+        }
     }
 
-    private boolean isEqual(Object left, Object right) {
-        if (left == null && right == null) return true;
-        if (left == null) return false;
-        return left.equals(right);
+    static double unbox(Token operator, Object operand) {
+        if (operand instanceof Double) return (double) operand;
+        throw new RuntimeError(operator, "Operands must be numbers.");
     }
 
     @Override
@@ -130,6 +217,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
+        if (expr.number && tracer == null) return evaluateNumber(expr);
+
         Object right = evaluate(expr.right);
 
         switch (expr.operator.type) {
@@ -151,7 +240,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        environment.assign(expr.name, value);
+
+        if (expr.cell) {
+            Object cell = expr.depth == Expr.Resolvable.CAPTURED
+                    ? frame.captures[expr.slot]
+                    : frame.getAt(expr.depth, expr.slot);
+            ((Cell) cell).value = value;
+        } else if (expr.depth >= 0) {
+            frame.assignAt(expr.depth, expr.slot, value);
+        } else {
+            globals.assign(expr.name, value);
+        }
         return value;
     }
 
@@ -170,32 +269,151 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        return evaluateCall(expr, false);
+    }
+
+    // Makes a call, or for a call in tail position returns the TailCall that the
+    // enclosing function runs in its place
+    private Object evaluateCall(Expr.Call expr, boolean tail) {
+        // A traced call evaluates the Get as usual so that it gets its own record.
+        if (expr.invoked != null && tracer == null) return invokeMethod(expr, expr.invoked, tail);
+        if (expr.invokedSuper != null && tracer == null) return invokeSuper(expr, expr.invokedSuper, tail);
+
         Object callee = evaluate(expr.callee);
+        return callWith(expr, null, null, callee, tail);
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr argument : expr.arguments) {
-            arguments.add(evaluate(argument));
+    // Calls a method on an instance without binding it, unless a field shadows the method
+    private Object invokeMethod(Expr.Call expr, Expr.Get property, boolean tail) {
+        Object object = evaluate(property.object);
+        if (!(object instanceof LoxInstance)) {
+            throw new RuntimeError(property.name, "Only instances have properties.");
         }
 
+        LoxInstance instance = (LoxInstance) object;
+        LoxFunction method = property.cache.method(instance, property.name);
+        Object callee = method == null ? property.cache.get(instance, property.name) : null;
+        return callWith(expr, instance, method, callee, tail);
+    }
+
+    // Calls a superclass method on 'this' without binding it
+    private Object invokeSuper(Expr.Call expr, Expr.Super callee, boolean tail) {
+        LoxClass superclass = (LoxClass)lookUpVariable(callee.keyword, callee);
+        LoxInstance object = (LoxInstance)lookUpVariable(callee.receiver.keyword, callee.receiver);
+        LoxFunction method = superMethod(callee, superclass);
+        return callWith(expr, object, method, null, tail);
+    }
+
+    // Evaluates the arguments of a call and passes them on without collecting them
+    // when there are few enough for a fixed-arity entry point
+    private Object callWith(Expr.Call expr, LoxInstance receiver, LoxFunction method, Object callee,
+                            boolean tail) {
+        if (tail) return tailCall(this, expr.paren, receiver, method, callee, evaluateArguments(expr));
+
+        List<Expr> arguments = expr.arguments;
+        switch (arguments.size()) {
+            case 0:
+                return call0(this, expr.paren, receiver, method, callee);
+            case 1:
+                return call1(this, expr.paren, receiver, method, callee,
+                        evaluate(arguments.get(0)));
+            case 2: {
+                Object a = evaluate(arguments.get(0));
+                return call2(this, expr.paren, receiver, method, callee,
+                        a, evaluate(arguments.get(1)));
+            }
+            case 3: {
+                Object a = evaluate(arguments.get(0));
+                Object b = evaluate(arguments.get(1));
+                return call3(this, expr.paren, receiver, method, callee,
+                        a, b, evaluate(arguments.get(2)));
+            }
+            default:
+                return call(this, expr.paren, receiver, method, callee, evaluateArguments(expr));
+        }
+    }
+
+    private Object[] evaluateArguments(Expr.Call expr) {
+        Object[] values = new Object[expr.arguments.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(expr.arguments.get(i));
+        }
+        return values;
+    }
+
+    // Every engine calls through the helpers below once the arguments are evaluated.
+    // A non-null method runs on the receiver without being bound; otherwise the callee
+    // is checked and called.
+
+    static Object call0(Interpreter interpreter, Token paren, LoxInstance receiver,
+                        LoxFunction method, Object callee) {
+        if (method != null) return checkArity(paren, method, 0).call0(interpreter, receiver);
+        return callable(paren, callee, 0).call0(interpreter);
+    }
+
+    static Object call1(Interpreter interpreter, Token paren, LoxInstance receiver,
+                        LoxFunction method, Object callee, Object a) {
+        if (method != null) return checkArity(paren, method, 1).call1(interpreter, receiver, a);
+        return callable(paren, callee, 1).call1(interpreter, a);
+    }
+
+    static Object call2(Interpreter interpreter, Token paren, LoxInstance receiver,
+                        LoxFunction method, Object callee, Object a, Object b) {
+        if (method != null) return checkArity(paren, method, 2).call2(interpreter, receiver, a, b);
+        return callable(paren, callee, 2).call2(interpreter, a, b);
+    }
+
+    static Object call3(Interpreter interpreter, Token paren, LoxInstance receiver,
+                        LoxFunction method, Object callee, Object a, Object b, Object c) {
+        if (method != null) return checkArity(paren, method, 3).call3(interpreter, receiver, a, b, c);
+        return callable(paren, callee, 3).call3(interpreter, a, b, c);
+    }
+
+    static Object call(Interpreter interpreter, Token paren, LoxInstance receiver,
+                       LoxFunction method, Object callee, Object[] arguments) {
+        if (method != null) {
+            return checkArity(paren, method, arguments.length).call(interpreter, receiver, arguments);
+        }
+        return callable(paren, callee, arguments.length).call(interpreter, arguments);
+    }
+
+    // Checks a call in tail position as call() does, but hands a call to a Lox function
+    // back as a TailCall instead of making it
+    static Object tailCall(Interpreter interpreter, Token paren, LoxInstance receiver,
+                           LoxFunction method, Object callee, Object[] arguments) {
+        if (method != null) {
+            return new TailCall(checkArity(paren, method, arguments.length), receiver, arguments);
+        }
+
+        LoxCallable function = callable(paren, callee, arguments.length);
+        if (function instanceof LoxFunction) return ((LoxFunction) function).tailCall(arguments);
+        return function.call(interpreter, arguments);
+    }
+
+    // Checks that a callee can be called with the given number of arguments
+    private static LoxCallable callable(Token paren, Object callee, int count) {
         if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes.");
+            throw new RuntimeError(paren, "Can only call functions and classes.");
         }
-        LoxCallable function = (LoxCallable) callee;
 
-        if (arguments.size() != function.arity()) {
-            throw new RuntimeError(expr.paren, "Expected " +
+        return checkArity(paren, (LoxCallable) callee, count);
+    }
+
+    private static <T extends LoxCallable> T checkArity(Token paren, T function, int count) {
+        if (count != function.arity()) {
+            throw new RuntimeError(paren, "Expected " +
                     function.arity() + " arguments but got " +
-                    arguments.size() + ".");
+                    count + ".");
         }
 
-        return function.call(this, arguments);
+        return function;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
         Object object = evaluate(expr.object);
         if (object instanceof LoxInstance) {
-            return ((LoxInstance) object).get(expr.name);
+            return expr.cache.get((LoxInstance) object, expr.name);
         }
 
         throw new RuntimeError(expr.name, "Only instances have properties.");
@@ -211,29 +429,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
-        ((LoxInstance) object).set(expr.name, value);
+        expr.cache.set((LoxInstance) object, expr.name, value);
         return value;
     }
 
-    private boolean isTruthy(Object object) {
+    public static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) return (boolean) object;
         return true;
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number.");
     }
 
-    private void checkNumberOperands(Token operator,
-                                     Object left, Object right) {
-        if (left instanceof Double && right instanceof Double) return;
-
-        throw new RuntimeError(operator, "Operands must be numbers.");
-    }
-
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
@@ -248,84 +459,131 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Object visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
         System.out.println(stringify(value));
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Object visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if (stmt.initializer != null) {
             value = evaluate(stmt.initializer);
         }
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        define(stmt, value);
+        return NORMAL;
+    }
+
+    // Binds a declared name in the current frame, or in globals for top-level declarations
+    private void define(Stmt.Declaration stmt, Object value) {
+        if (stmt.slot < 0) {
+            globals.define(stmt.name.symbol, value);
+        } else {
+            frame.slots[stmt.slot] = stmt.cell ? new Cell(value) : value;
+        }
+    }
+
+    // Sets the value of a name that define() has already bound
+    private void initialize(Stmt.Declaration stmt, Object value) {
+        if (stmt.slot < 0) {
+            globals.define(stmt.name.symbol, value);
+        } else if (stmt.cell) {
+            ((Cell) frame.slots[stmt.slot]).value = value;
+        } else {
+            frame.slots[stmt.slot] = value;
+        }
     }
 
+
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        if (!stmt.needsFrame) {
+            for (Stmt statement : stmt.statements) {
+                Object completion = execute(statement);
+                if (completion != NORMAL) return completion;
+            }
+            return NORMAL;
+        }
+
+        return executeBlock(stmt.statements, new Frame(frame, stmt.slots));
     }
 
-    public void executeBlock(List<Stmt> statements, Environment environment) {
-        Environment previous = this.environment;
+    public Object executeBlock(List<Stmt> statements, Frame frame) {
+        Frame previous = this.frame;
         try {
-            this.environment = environment;
+            this.frame = frame;
             for (Stmt statement : statements) {
-                execute(statement);
+                Object completion = execute(statement);
+                if (completion != NORMAL) return completion;
             }
+            return NORMAL;
         } finally {
-            this.environment = previous;
+            this.frame = previous;
         }
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Object visitIfStmt(Stmt.If stmt) {
         Object condition = evaluate(stmt.condition);
         if (isTruthy(condition)) {
-            execute(stmt.thenBranch);
+            return execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.elseBranch);
         }
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Object visitWhileStmt(Stmt.While stmt) {
+        if (tiers != null && stmt.compiled != null) {
+            return stmt.compiled.execute(frame);
+        }
+
         while (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.body);
+            Object completion = execute(stmt.body);
+            if (completion != NORMAL) return completion;
+            if (tiers == null) continue;
+
+            tiers.backEdge(stmt);
+            ClosureCompiler.StmtNode compiled = stmt.compiled;
+            if (compiled != null) {
+                // Locals live in the frame and globals in the environment, so the compiled
+                // loop picks up at the next condition check with every value in place.
+                return compiled.execute(frame);
+            }
         }
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Object visitFunctionStmt(Stmt.Function stmt) {
+        // Bind the name first so that a function capturing itself sees its own cell.
+        define(stmt, null);
+        initialize(stmt, new LoxFunction(stmt, frame.capture(stmt), false));
+        return NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.tailCall && tracer == null) return evaluateCall((Expr.Call) stmt.value, true);
+
         Object value = null;
         if (stmt.value != null) {
             value = evaluate(stmt.value);
         }
 
-        throw new Return(value);
+        return value;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Object visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if (stmt.superclass != null) {
             superclass = evaluate(stmt.superclass);
@@ -335,27 +593,27 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        define(stmt, null);
 
         if (stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            frame = new Frame(frame, 1);
+            frame.slots[0] = superclass;
         }
 
-        Map<String, LoxFunction> methods = new HashMap<>();
+        Map<Symbol, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LoxFunction function = new LoxFunction(method, environment, method.name.lexeme.equals("init"));
-            methods.put(method.name.lexeme, function);
+            LoxFunction function = new LoxFunction(method, frame.capture(method), method.name.lexeme.equals("init"));
+            methods.put(method.name.symbol, function);
         }
 
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass)superclass, methods);
 
         if (superclass != null) {
-            environment = environment.enclosing;
+            frame = frame.enclosing;
         }
 
-        environment.assign(stmt.name, klass);
-        return null;
+        initialize(stmt, klass);
+        return NORMAL;
     }
 
     @Override
@@ -365,18 +623,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass)environment.getAt(
-                distance, "super");
-        LoxInstance object = (LoxInstance)environment.getAt(
-                distance - 1, "this");
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        LoxClass superclass = (LoxClass)lookUpVariable(expr.keyword, expr);
+        LoxInstance object = (LoxInstance)lookUpVariable(expr.receiver.keyword, expr.receiver);
+        return superMethod(expr, superclass).bind(object);
+    }
+
+    // Returns the method a super expression refers to, looking it up only when the superclass changes
+    static LoxFunction superMethod(Expr.Super expr, LoxClass superclass) {
+        if (superclass == expr.boundClass) return expr.boundMethod;
 
+        LoxFunction method = superclass.findMethod(expr.method.symbol);
         if (method == null) {
             throw new RuntimeError(expr.method,
                     "Undefined property '" + expr.method.lexeme + "'.");
         }
 
-        return method.bind(object);
+        expr.boundClass = superclass;
+        expr.boundMethod = method;
+        return method;
     }
 }
@@ -0,0 +1,703 @@
+package lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static lox.ClassAssembler.*;
+
+/**
+ * Compiles function bodies to JVM bytecode, one hidden class per Lox function.
+ * The generated class implements ClosureCompiler.StmtNode, so a compiled body plugs
+ * into LoxFunction like any other and functions stay ordinary LoxCallables. Locals
+ * stay in Frame slots, so closures and the other engines see the same variables;
+ * dynamic operations call into JitRuntime, where HotSpot can inline them.
+ * Tokens, globals and other objects the code needs are passed in through a static
+ * constants array of the generated class.
+ */
+final class JitCompiler {
+    private static final String OBJECT = "java/lang/Object";
+    private static final String BOOLEAN = "java/lang/Boolean";
+    private static final String DOUBLE = "java/lang/Double";
+    private static final String FRAME = "lox/Frame";
+    private static final String CELL = "lox/Cell";
+    private static final String TOKEN = "lox/Token";
+    private static final String SYMBOL = "lox/Symbol";
+    private static final String ENVIRONMENT = "lox/Environment";
+    private static final String INTERPRETER = "lox/Interpreter";
+    private static final String RUNTIME = "lox/JitRuntime";
+    private static final String BINARY_OP = "lox/BinaryOp";
+    private static final String PROPERTY_CACHE = "lox/PropertyCache";
+    private static final String STMT_NODE = "lox/ClosureCompiler$StmtNode";
+
+    private static final String OBJECT_DESC = "Ljava/lang/Object;";
+    private static final String TOKEN_DESC = "Llox/Token;";
+
+    // Local variables of the generated execute method
+    private static final int THIS = 0;
+    private static final int FRAME_LOCAL = 1;
+    private static final int SLOTS_LOCAL = 2;
+    private static final int MAX_LOCALS = 3;
+
+    /** Thrown for code the JIT does not compile; the function stays on its current tier. */
+    private static final class Unsupported extends RuntimeException {
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    // Defines the generated classes as hidden classes in this package
+    private final MethodHandles.Lookup lookup = MethodHandles.lookup();
+    private final ClosureCompiler compiler;
+    private final Interpreter interpreter;
+    private final Environment globals;
+
+    JitCompiler(ClosureCompiler compiler, Interpreter interpreter) {
+        this.compiler = compiler;
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals;
+    }
+
+    /**
+     * Compiles the body of a function to a JVM class.
+     *
+     * @param declaration The function to compile
+     * @return The compiled body, or null if the function uses code the JIT does not support
+     */
+    ClosureCompiler.StmtNode compile(Stmt.Function declaration) {
+        return compile(declaration.name.lexeme, declaration.body);
+    }
+
+    /**
+     * Compiles a loop to a JVM class, to continue running it through on-stack replacement.
+     *
+     * @param loop The loop to compile
+     * @return The compiled loop, or null if it uses code the JIT does not support
+     */
+    ClosureCompiler.StmtNode compile(Stmt.While loop) {
+        return compile("loop", Collections.singletonList(loop));
+    }
+
+    private ClosureCompiler.StmtNode compile(String name, List<Stmt> body) {
+        MethodGenerator generator = new MethodGenerator("lox/Jit$" + name);
+        byte[] bytes;
+        try {
+            bytes = generator.generate(body);
+        } catch (Unsupported | ClassAssembler.TooLargeException e) {
+            return null;
+        }
+
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(bytes, true);
+            Class<?> type = hidden.lookupClass();
+            hidden.findStaticSetter(type, "constants", Object[].class)
+                    .invoke(generator.constants.toArray());
+            return (ClosureCompiler.StmtNode) hidden.findConstructor(type, MethodType.methodType(void.class))
+                    .invoke();
+        } catch (Throwable e) {
+            throw new IllegalStateException("Failed to load compiled code for '" + name + "'.", e);
+        }
+    }
+
+    // Generates the class for one function body or loop
+    private final class MethodGenerator {
+        private final String className;
+        private final ClassAssembler assembler;
+        private ClassAssembler.Code code;
+        final List<Object> constants = new ArrayList<>();
+        private final Map<Object, Integer> constantIndices = new IdentityHashMap<>();
+
+        MethodGenerator(String className) {
+            this.className = className;
+            this.assembler = new ClassAssembler(className, OBJECT, STMT_NODE);
+        }
+
+        byte[] generate(List<Stmt> body) {
+            assembler.field(ACC_PRIVATE | ACC_STATIC, "constants", "[" + OBJECT_DESC);
+
+            ClassAssembler.Code init = assembler.method(ACC_PUBLIC, "<init>", "()V");
+            init.local(ALOAD, THIS);
+            init.invoke(INVOKESPECIAL, OBJECT, "<init>", "()V");
+            init.op(RETURN, 0);
+            init.end(1);
+
+            code = assembler.method(ACC_PUBLIC, "execute", "(Llox/Frame;)" + OBJECT_DESC);
+            loadSlots();
+            for (Stmt statement : body) {
+                statement(statement);
+            }
+            code.field(GETSTATIC, "lox/Completion", "NORMAL", OBJECT_DESC);
+            code.op(ARETURN, -1);
+            code.end(MAX_LOCALS);
+
+            return assembler.toByteArray();
+        }
+
+        // Pushes an object from the constants array, cast to the given type
+        private void constant(Object value, String type) {
+            Integer index = constantIndices.get(value);
+            if (index == null) {
+                index = constants.size();
+                constants.add(value);
+                constantIndices.put(value, index);
+            }
+
+            code.field(GETSTATIC, className, "constants", "[" + OBJECT_DESC);
+            code.intConstant(index);
+            code.op(AALOAD, -1);
+            if (!type.equals(OBJECT)) code.type(CHECKCAST, type);
+        }
+
+        private void loadSlots() {
+            code.local(ALOAD, FRAME_LOCAL);
+            code.field(GETFIELD, FRAME, "slots", "[" + OBJECT_DESC);
+            code.local(ASTORE, SLOTS_LOCAL);
+        }
+
+        private void statement(Stmt stmt) {
+            if (stmt instanceof Stmt.Expression) {
+                expression(((Stmt.Expression) stmt).expression);
+                code.op(POP, -1);
+            } else if (stmt instanceof Stmt.Print) {
+                expression(((Stmt.Print) stmt).expression);
+                code.invoke(INVOKESTATIC, RUNTIME, "print", "(" + OBJECT_DESC + ")V");
+            } else if (stmt instanceof Stmt.Var) {
+                varStmt((Stmt.Var) stmt);
+            } else if (stmt instanceof Stmt.Block) {
+                blockStmt((Stmt.Block) stmt);
+            } else if (stmt instanceof Stmt.If) {
+                ifStmt((Stmt.If) stmt);
+            } else if (stmt instanceof Stmt.While) {
+                whileStmt((Stmt.While) stmt);
+            } else if (stmt instanceof Stmt.Function) {
+                functionStmt((Stmt.Function) stmt);
+            } else if (stmt instanceof Stmt.Return) {
+                returnStmt((Stmt.Return) stmt);
+            } else {
+                throw new Unsupported("Cannot compile " + stmt.getClass().getSimpleName());
+            }
+        }
+
+        private void varStmt(Stmt.Var stmt) {
+            if (stmt.slot < 0) {
+                constant(globals, ENVIRONMENT);
+                constant(stmt.name.symbol, SYMBOL);
+                initializer(stmt);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "define", "(Llox/Symbol;" + OBJECT_DESC + ")V");
+                return;
+            }
+
+            code.local(ALOAD, SLOTS_LOCAL);
+            code.intConstant(stmt.slot);
+            if (stmt.cell) {
+                code.type(NEW, CELL);
+                code.op(DUP, 1);
+                initializer(stmt);
+                code.invoke(INVOKESPECIAL, CELL, "<init>", "(" + OBJECT_DESC + ")V");
+            } else {
+                initializer(stmt);
+            }
+            code.op(AASTORE, -3);
+        }
+
+        private void initializer(Stmt.Var stmt) {
+            if (stmt.initializer == null) {
+                code.op(ACONST_NULL, 1);
+            } else {
+                expression(stmt.initializer);
+            }
+        }
+
+        private void blockStmt(Stmt.Block stmt) {
+            if (stmt.needsFrame) {
+                code.type(NEW, FRAME);
+                code.op(DUP, 1);
+                code.local(ALOAD, FRAME_LOCAL);
+                code.intConstant(stmt.slots);
+                code.invoke(INVOKESPECIAL, FRAME, "<init>", "(Llox/Frame;I)V");
+                code.local(ASTORE, FRAME_LOCAL);
+                loadSlots();
+            }
+
+            for (Stmt statement : stmt.statements) {
+                statement(statement);
+            }
+
+            if (stmt.needsFrame) {
+                code.local(ALOAD, FRAME_LOCAL);
+                code.field(GETFIELD, FRAME, "enclosing", "Llox/Frame;");
+                code.local(ASTORE, FRAME_LOCAL);
+                loadSlots();
+            }
+        }
+
+        private void ifStmt(Stmt.If stmt) {
+            ClassAssembler.Label elseBranch = new ClassAssembler.Label();
+            ClassAssembler.Label end = new ClassAssembler.Label();
+
+            condition(stmt.condition);
+            code.jump(IFEQ, elseBranch);
+            statement(stmt.thenBranch);
+            if (stmt.elseBranch == null) {
+                code.mark(elseBranch);
+                return;
+            }
+
+            code.jump(GOTO, end);
+            code.mark(elseBranch);
+            statement(stmt.elseBranch);
+            code.mark(end);
+        }
+
+        private void whileStmt(Stmt.While stmt) {
+            ClassAssembler.Label start = new ClassAssembler.Label();
+            ClassAssembler.Label end = new ClassAssembler.Label();
+
+            code.mark(start);
+            condition(stmt.condition);
+            code.jump(IFEQ, end);
+            statement(stmt.body);
+            code.jump(GOTO, start);
+            code.mark(end);
+        }
+
+        private void functionStmt(Stmt.Function stmt) {
+            compiler.compileFunction(stmt);
+
+            constant(globals, ENVIRONMENT);
+            code.local(ALOAD, FRAME_LOCAL);
+            constant(stmt, "lox/Stmt$Function");
+            code.invoke(INVOKESTATIC, RUNTIME, "declareFunction",
+                    "(Llox/Environment;Llox/Frame;Llox/Stmt$Function;)V");
+        }
+
+        // Returns the value straight from the generated method, which is the completion
+        // a compiled body yields for a return statement
+        private void returnStmt(Stmt.Return stmt) {
+            if (stmt.value == null) {
+                code.op(ACONST_NULL, 1);
+            } else if (stmt.tailCall) {
+                call((Expr.Call) stmt.value, true);
+            } else {
+                expression(stmt.value);
+            }
+            code.op(ARETURN, -1);
+        }
+
+        // Pushes the value of an expression
+        private void expression(Expr expr) {
+            if (unboxed(expr)) {
+                number(expr);
+                code.invoke(INVOKESTATIC, DOUBLE, "valueOf", "(D)Ljava/lang/Double;");
+            } else if (expr instanceof Expr.Literal) {
+                literal(((Expr.Literal) expr).value);
+            } else if (expr instanceof Expr.Grouping) {
+                expression(((Expr.Grouping) expr).expression);
+            } else if (expr instanceof Expr.Binary) {
+                binary((Expr.Binary) expr);
+            } else if (expr instanceof Expr.Unary) {
+                unary((Expr.Unary) expr);
+            } else if (expr instanceof Expr.Logical) {
+                logical((Expr.Logical) expr);
+            } else if (expr instanceof Expr.Variable) {
+                read((Expr.Variable) expr, ((Expr.Variable) expr).name);
+            } else if (expr instanceof Expr.This) {
+                read((Expr.This) expr, ((Expr.This) expr).keyword);
+            } else if (expr instanceof Expr.Assign) {
+                assign((Expr.Assign) expr);
+            } else if (expr instanceof Expr.Call) {
+                call((Expr.Call) expr, false);
+            } else if (expr instanceof Expr.Get) {
+                get((Expr.Get) expr);
+            } else if (expr instanceof Expr.Set) {
+                set((Expr.Set) expr);
+            } else if (expr instanceof Expr.Super) {
+                superExpr((Expr.Super) expr);
+            } else {
+                throw new Unsupported("Cannot compile " + expr.getClass().getSimpleName());
+            }
+        }
+
+        private void literal(Object value) {
+            if (value == null) {
+                code.op(ACONST_NULL, 1);
+            } else if (value instanceof Boolean) {
+                code.field(GETSTATIC, BOOLEAN, (boolean) value ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+            } else if (value instanceof String) {
+                code.stringConstant((String) value);
+            } else {
+                constant(value, OBJECT);
+            }
+        }
+
+        // Whether the operation can be computed on unboxed numbers, with no type checks,
+        // because TypeInference has proven that its operands are numbers
+        private boolean unboxed(Expr expr) {
+            if (expr instanceof Expr.Binary) {
+                Expr.Binary binary = (Expr.Binary) expr;
+                return expr.number && binary.left.number && binary.right.number;
+            }
+            if (expr instanceof Expr.Unary) {
+                Expr.Unary unary = (Expr.Unary) expr;
+                return unary.operator.type == TokenType.MINUS && unary.right.number;
+            }
+            return false;
+        }
+
+        // Pushes the value of an expression that TypeInference proved is a number, as a double
+        private void number(Expr expr) {
+            if (expr instanceof Expr.Grouping) {
+                number(((Expr.Grouping) expr).expression);
+                return;
+            }
+
+            if (!unboxed(expr)) {
+                expression(expr);
+                code.type(CHECKCAST, DOUBLE);
+                code.invoke(INVOKEVIRTUAL, DOUBLE, "doubleValue", "()D");
+                return;
+            }
+
+            if (expr instanceof Expr.Unary) {
+                number(((Expr.Unary) expr).right);
+                code.op(DNEG, 0);
+                return;
+            }
+
+            Expr.Binary binary = (Expr.Binary) expr;
+            number(binary.left);
+            number(binary.right);
+            switch (binary.operator.type) {
+                case PLUS: code.op(DADD, -2); break;
+                case MINUS: code.op(DSUB, -2); break;
+                case STAR: code.op(DMUL, -2); break;
+                default:
+                    // Division still has to check for zero.
+                    constant(binary.operator, TOKEN);
+                    code.invoke(INVOKESTATIC, RUNTIME, "divide", "(DD" + TOKEN_DESC + ")D");
+                    break;
+            }
+        }
+
+        private void binary(Expr.Binary expr) {
+            TokenType operator = expr.operator.type;
+            boolean numbers = Interpreter.isComparison(expr.operator) && expr.left.number && expr.right.number;
+            if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.BANG_EQUAL || numbers) {
+                condition(expr);
+                box();
+                return;
+            }
+
+            apply(expr);
+        }
+
+        // Pushes the result of an operator on operands of any type, computed by BinaryOp
+        private void apply(Expr.Binary expr) {
+            constant(expr.operator, TOKEN);
+            expression(expr.left);
+            expression(expr.right);
+            code.invoke(INVOKESTATIC, BINARY_OP, "apply",
+                    "(" + TOKEN_DESC + OBJECT_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+        }
+
+        private void unary(Expr.Unary expr) {
+            if (expr.operator.type == TokenType.BANG) {
+                condition(expr);
+                box();
+                return;
+            }
+
+            expression(expr.right);
+            constant(expr.operator, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "negate", "(" + OBJECT_DESC + TOKEN_DESC + ")" + OBJECT_DESC);
+        }
+
+        private void logical(Expr.Logical expr) {
+            ClassAssembler.Label end = new ClassAssembler.Label();
+
+            expression(expr.left);
+            code.op(DUP, 1);
+            isTruthy();
+            code.jump(expr.operator.type == TokenType.OR ? IFNE : IFEQ, end);
+            code.op(POP, -1);
+            expression(expr.right);
+            code.mark(end);
+        }
+
+        // Pushes the truth of an expression as an int, without boxing comparisons
+        private void condition(Expr expr) {
+            if (expr instanceof Expr.Grouping) {
+                condition(((Expr.Grouping) expr).expression);
+                return;
+            }
+
+            if (expr instanceof Expr.Unary && ((Expr.Unary) expr).operator.type == TokenType.BANG) {
+                condition(((Expr.Unary) expr).right);
+                code.op(ICONST_1, 1);
+                code.op(IXOR, -1);
+                return;
+            }
+
+            if (expr instanceof Expr.Binary) {
+                Expr.Binary binary = (Expr.Binary) expr;
+                TokenType operator = binary.operator.type;
+                if (operator == TokenType.EQUAL_EQUAL || operator == TokenType.BANG_EQUAL) {
+                    expression(binary.left);
+                    expression(binary.right);
+                    code.invoke(INVOKESTATIC, BINARY_OP, "isEqual", "(" + OBJECT_DESC + OBJECT_DESC + ")Z");
+                    if (operator == TokenType.BANG_EQUAL) {
+                        code.op(ICONST_1, 1);
+                        code.op(IXOR, -1);
+                    }
+                    return;
+                }
+
+                if (Interpreter.isComparison(binary.operator)) {
+                    if (binary.left.number && binary.right.number) {
+                        compare(binary);
+                    } else {
+                        apply(binary);
+                        booleanValue();
+                    }
+                    return;
+                }
+            }
+
+            expression(expr);
+            if (expr.bool) {
+                booleanValue();
+            } else {
+                isTruthy();
+            }
+        }
+
+        // Unboxes a value known to be a Boolean
+        private void booleanValue() {
+            code.type(CHECKCAST, BOOLEAN);
+            code.invoke(INVOKEVIRTUAL, BOOLEAN, "booleanValue", "()Z");
+        }
+
+        // Pushes the result of comparing two operands that are numbers, with no calls
+        private void compare(Expr.Binary expr) {
+            ClassAssembler.Label end = new ClassAssembler.Label();
+
+            code.op(ICONST_1, 1);
+            number(expr.left);
+            number(expr.right);
+            // A comparison with NaN is false, so NaN compares so as to fail the jump.
+            switch (expr.operator.type) {
+                case GREATER:
+                    code.op(DCMPL, -3);
+                    code.jump(IFGT, end);
+                    break;
+                case GREATER_EQUAL:
+                    code.op(DCMPL, -3);
+                    code.jump(IFGE, end);
+                    break;
+                case LESS:
+                    code.op(DCMPG, -3);
+                    code.jump(IFLT, end);
+                    break;
+                default:
+                    code.op(DCMPG, -3);
+                    code.jump(IFLE, end);
+                    break;
+            }
+            code.op(POP, -1);
+            code.op(ICONST_0, 1);
+            code.mark(end);
+        }
+
+        private void isTruthy() {
+            code.invoke(INVOKESTATIC, INTERPRETER, "isTruthy", "(" + OBJECT_DESC + ")Z");
+        }
+
+        private void box() {
+            code.invoke(INVOKESTATIC, BOOLEAN, "valueOf", "(Z)Ljava/lang/Boolean;");
+        }
+
+        private void read(Expr.Resolvable expr, Token name) {
+            if (expr.depth == Expr.Resolvable.GLOBAL) {
+                constant(globals, ENVIRONMENT);
+                constant(name, TOKEN);
+                code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "get", "(" + TOKEN_DESC + ")" + OBJECT_DESC);
+                return;
+            }
+
+            slot(expr);
+            if (expr.cell) {
+                code.type(CHECKCAST, CELL);
+                code.field(GETFIELD, CELL, "value", OBJECT_DESC);
+            }
+        }
+
+        // Pushes the content of the slot a local resolves to: its value or its cell
+        private void slot(Expr.Resolvable expr) {
+            if (expr.depth == Expr.Resolvable.CAPTURED) {
+                code.local(ALOAD, FRAME_LOCAL);
+                code.field(GETFIELD, FRAME, "captures", "[" + OBJECT_DESC);
+                code.intConstant(expr.slot);
+                code.op(AALOAD, -1);
+            } else if (expr.depth == 0) {
+                code.local(ALOAD, SLOTS_LOCAL);
+                code.intConstant(expr.slot);
+                code.op(AALOAD, -1);
+            } else {
+                code.local(ALOAD, FRAME_LOCAL);
+                code.intConstant(expr.depth);
+                code.intConstant(expr.slot);
+                code.invoke(INVOKEVIRTUAL, FRAME, "getAt", "(II)" + OBJECT_DESC);
+            }
+        }
+
+        private void assign(Expr.Assign expr) {
+            if (expr.depth == Expr.Resolvable.GLOBAL) {
+                constant(globals, ENVIRONMENT);
+                constant(expr.name, TOKEN);
+                expression(expr.value);
+                code.invoke(INVOKESTATIC, RUNTIME, "assignGlobal",
+                        "(Llox/Environment;" + TOKEN_DESC + OBJECT_DESC + ")" + OBJECT_DESC);
+                return;
+            }
+
+            // Captured locals that are assigned are always in cells.
+            if (expr.cell || expr.depth == Expr.Resolvable.CAPTURED) {
+                slot(expr);
+                code.type(CHECKCAST, CELL);
+                expression(expr.value);
+                code.op(DUP_X1, 1);
+                code.field(PUTFIELD, CELL, "value", OBJECT_DESC);
+                return;
+            }
+
+            if (expr.depth == 0) {
+                code.local(ALOAD, SLOTS_LOCAL);
+                code.intConstant(expr.slot);
+                expression(expr.value);
+                code.op(DUP_X2, 1);
+                code.op(AASTORE, -3);
+                return;
+            }
+
+            code.local(ALOAD, FRAME_LOCAL);
+            code.intConstant(expr.depth);
+            code.intConstant(expr.slot);
+            expression(expr.value);
+            code.invoke(INVOKESTATIC, RUNTIME, "assignAt",
+                    "(Llox/Frame;II" + OBJECT_DESC + ")" + OBJECT_DESC);
+        }
+
+        // Makes a call, or in tail position returns a TailCall for the caller to run
+        private void call(Expr.Call expr, boolean tail) {
+            constant(interpreter, INTERPRETER);
+            constant(expr.paren, TOKEN);
+            if (expr.invoked != null) {
+                invoke(expr, expr.invoked, tail);
+                return;
+            }
+            if (expr.invokedSuper != null) {
+                invokeSuper(expr, expr.invokedSuper, tail);
+                return;
+            }
+            code.op(ACONST_NULL, 1);
+            code.op(ACONST_NULL, 1);
+            expression(expr.callee);
+            arguments(expr, tail);
+        }
+
+        // Calls a method without binding it; the receiver, the method (null if a field
+        // shadows it) and the field value stay on the stack while the arguments run
+        private void invoke(Expr.Call expr, Expr.Get property, boolean tail) {
+            expression(property.object);
+            constant(property.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "receiver",
+                    "(" + OBJECT_DESC + TOKEN_DESC + ")Llox/LoxInstance;");
+            code.op(DUP, 1);
+            constant(property, "lox/Expr$Get");
+            code.invoke(INVOKESTATIC, RUNTIME, "method",
+                    "(Llox/LoxInstance;Llox/Expr$Get;)Llox/LoxFunction;");
+            code.op(DUP2, 2);
+            constant(property, "lox/Expr$Get");
+            code.invoke(INVOKESTATIC, RUNTIME, "field",
+                    "(Llox/LoxInstance;Llox/LoxFunction;Llox/Expr$Get;)" + OBJECT_DESC);
+            arguments(expr, tail);
+        }
+
+        // Pushes the arguments of a call and calls the target below them on the stack.
+        // Up to three arguments go to the fixed-arity entry points as they are, more,
+        // and the arguments of a tail call, are collected in an array.
+        private void arguments(Expr.Call expr, boolean tail) {
+            int count = expr.arguments.size();
+            String target = "(Llox/Interpreter;" + TOKEN_DESC + "Llox/LoxInstance;Llox/LoxFunction;"
+                    + OBJECT_DESC;
+            if (count <= 3 && !tail) {
+                for (Expr argument : expr.arguments) {
+                    expression(argument);
+                }
+                code.invoke(INVOKESTATIC, INTERPRETER, "call" + count,
+                        target + OBJECT_DESC.repeat(count) + ")" + OBJECT_DESC);
+                return;
+            }
+
+            code.intConstant(count);
+            code.type(ANEWARRAY, "java/lang/Object");
+            for (int i = 0; i < count; i++) {
+                code.op(DUP, 1);
+                code.intConstant(i);
+                expression(expr.arguments.get(i));
+                code.op(AASTORE, -3);
+            }
+            code.invoke(INVOKESTATIC, INTERPRETER, tail ? "tailCall" : "call",
+                    target + "[" + OBJECT_DESC + ")" + OBJECT_DESC);
+        }
+
+        private void get(Expr.Get expr) {
+            expression(expr.object);
+            constant(expr.name, TOKEN);
+            constant(expr.cache, PROPERTY_CACHE);
+            code.invoke(INVOKESTATIC, RUNTIME, "get",
+                    "(" + OBJECT_DESC + TOKEN_DESC + "Llox/PropertyCache;)" + OBJECT_DESC);
+        }
+
+        private void set(Expr.Set expr) {
+            expression(expr.object);
+            constant(expr.name, TOKEN);
+            code.invoke(INVOKESTATIC, RUNTIME, "fieldTarget",
+                    "(" + OBJECT_DESC + TOKEN_DESC + ")Llox/LoxInstance;");
+            expression(expr.value);
+            constant(expr.name, TOKEN);
+            constant(expr.cache, PROPERTY_CACHE);
+            code.invoke(INVOKESTATIC, RUNTIME, "set",
+                    "(Llox/LoxInstance;" + OBJECT_DESC + TOKEN_DESC + "Llox/PropertyCache;)" + OBJECT_DESC);
+        }
+
+        private void superExpr(Expr.Super expr) {
+            superMethod(expr);
+            read(expr.receiver, expr.receiver.keyword);
+            code.type(CHECKCAST, "lox/LoxInstance");
+            code.invoke(INVOKEVIRTUAL, "lox/LoxFunction", "bind", "(Llox/LoxInstance;)Llox/LoxFunction;");
+        }
+
+        // Pushes the method a super expression refers to
+        private void superMethod(Expr.Super expr) {
+            constant(expr, "lox/Expr$Super");
+            read(expr, expr.keyword);
+            code.type(CHECKCAST, "lox/LoxClass");
+            code.invoke(INVOKESTATIC, INTERPRETER, "superMethod",
+                    "(Llox/Expr$Super;Llox/LoxClass;)Llox/LoxFunction;");
+        }
+
+        // Calls a superclass method on 'this' without binding it
+        private void invokeSuper(Expr.Call expr, Expr.Super callee, boolean tail) {
+            read(callee.receiver, callee.receiver.keyword);
+            code.type(CHECKCAST, "lox/LoxInstance");
+            superMethod(callee);
+            code.op(ACONST_NULL, 1);
+            arguments(expr, tail);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package lox;
+
+/**
+ * Operations that code generated by the JitCompiler calls back into.
+ * Each helper handles the dynamically typed cases of one operation and reports
+ * errors with the same messages as the Interpreter. They are small and static, so
+ * HotSpot inlines them into the generated methods. Binary operators on operands of
+ * unknown type call BinaryOp.apply instead, the code the Interpreter runs for them.
+ */
+final class JitRuntime {
+    private JitRuntime() {
+    }
+
+    // Divides numbers that TypeInference has proven are numbers
+    static double divide(double left, double right, Token operator) {
+        if (right == 0.0) {
+            throw new RuntimeError(operator, "Division by zero.");
+        }
+        return left / right;
+    }
+
+    static Object negate(Object operand, Token operator) {
+        Interpreter.checkNumberOperand(operator, operand);
+        return -(double) operand;
+    }
+
+    static void print(Object value) {
+        System.out.println(Interpreter.stringify(value));
+    }
+
+    static Object assignGlobal(Environment globals, Token name, Object value) {
+        globals.assign(name, value);
+        return value;
+    }
+
+    static Object assignAt(Frame frame, int distance, int slot, Object value) {
+        frame.assignAt(distance, slot, value);
+        return value;
+    }
+
+    static Object get(Object object, Token name, PropertyCache cache) {
+        if (object instanceof LoxInstance) {
+            return cache.get((LoxInstance) object, name);
+        }
+
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    // Checks the receiver of a method invocation
+    static LoxInstance receiver(Object object, Token name) {
+        if (object instanceof LoxInstance) return (LoxInstance) object;
+
+        throw new RuntimeError(name, "Only instances have properties.");
+    }
+
+    // Finds the method an invocation runs, or null if a field shadows it
+    static LoxFunction method(LoxInstance instance, Expr.Get property) {
+        return property.cache.method(instance, property.name);
+    }
+
+    // Reads the field an invocation calls when there is no method to run
+    static Object field(LoxInstance instance, LoxFunction method, Expr.Get property) {
+        if (method != null) return null;
+        return property.cache.get(instance, property.name);
+    }
+
+    // Checks the target of a field assignment before its value is evaluated
+    static LoxInstance fieldTarget(Object object, Token name) {
+        if (object instanceof LoxInstance) return (LoxInstance) object;
+
+        throw new RuntimeError(name, "Only instances have fields.");
+    }
+
+    static Object set(LoxInstance instance, Object value, Token name, PropertyCache cache) {
+        cache.set(instance, name, value);
+        return value;
+    }
+
+    // Creates a closure for a function declaration and binds it to its name
+    static void declareFunction(Environment globals, Frame frame, Stmt.Function declaration) {
+        if (declaration.slot < 0) {
+            globals.define(declaration.name.symbol,
+                    new LoxFunction(declaration, frame.capture(declaration), false));
+        } else if (declaration.cell) {
+            // The cell is in place before capture so that a function can refer to itself.
+            Cell cell = new Cell(null);
+            frame.slots[declaration.slot] = cell;
+            cell.value = new LoxFunction(declaration, frame.capture(declaration), false);
+        } else {
+            frame.slots[declaration.slot] = new LoxFunction(declaration, frame.capture(declaration), false);
+        }
+    }
+}
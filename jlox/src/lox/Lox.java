@@ -8,6 +8,9 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.List;
 
+import lox.opt.Pipeline;
+import lox.vm.VM;
+
 /**
  * Main class for the Lox interpreter implementation.
  * Handles script execution, REPL interaction, and error reporting.
@@ -22,24 +25,163 @@ public class Lox {
     // The interpreter instance used to execute Lox code
     private static final Interpreter interpreter = new Interpreter();
 
+    // Receives expression trace records when tracing is enabled, null otherwise
+    private static Tracer tracer = null;
+
+    // Whether --trace was given, and the file it named, null for the in-memory ring
+    private static boolean trace = false;
+    private static String tracePath = null;
+
+    // Compiles programs into executor trees when running on the closure or JIT engine, null otherwise
+    private static ClosureCompiler compiler = null;
+
+    // Runs programs as bytecode when running on the VM engine, null otherwise
+    private static VM vm = null;
+
+    // Passes run over each program before it executes, null when optimization is off
+    private static Pipeline optimizer = Pipeline.standard();
+
+    // Whether the tiered engine is selected, and when it promotes functions
+    private static boolean tiered = false;
+    private static boolean tierOptions = false;
+    private static int invocationThreshold = TieredCompiler.DEFAULT_INVOCATION_THRESHOLD;
+    private static int backEdgeThreshold = TieredCompiler.DEFAULT_BACK_EDGE_THRESHOLD;
+
     /**
      * Entry point for the Lox interpreter.
      * Handles both script file execution and interactive REPL mode.
      *
-     * @param args Command line arguments. Accepts optional script file path
+     * @param args Command line arguments. Accepts options followed by an optional script file path
      * @throws IOException If there's an error reading the script file or REPL input
      */
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        int first = 0;
+        while (first < args.length && args[first].startsWith("--")) {
+            if (!parseOption(args[first])) usage();
+            first++;
+        }
+        if (args.length - first > 1) usage();
+        // Only the tree engine evaluates expressions one by one, so only it can trace them.
+        if (trace && (compiler != null || vm != null || tiered)) {
+            conflict("--trace requires the tree engine.");
+        }
+        // Only the tiered engine promotes, so a threshold given to any other engine would go unused.
+        if (tierOptions && !tiered) {
+            conflict("--tier-calls and --tier-loops require the tiered engine.");
+        }
+        // The file is opened only once the options are known to be valid, so a rejected
+        // command line leaves it untouched.
+        if (trace) {
+            tracer = tracePath == null ? Tracer.ring(Tracer.DEFAULT_CAPACITY) : Tracer.file(tracePath);
+            interpreter.setTracer(tracer);
+        }
+        if (tiered) {
+            interpreter.setTiers(new TieredCompiler(new ClosureCompiler(interpreter, true),
+                    invocationThreshold, backEdgeThreshold));
+        }
+
+        if (args.length - first == 1) {
+            runFile(args[first]);
         } else {
             runPrompt();
         }
     }
 
+    /**
+     * Applies a single command line option.
+     *
+     * @param option The option, including its leading dashes
+     * @return false if the option is not recognized
+     */
+    private static boolean parseOption(String option) {
+        if (option.equals("--trace")) {
+            trace = true;
+            tracePath = null;
+        } else if (option.startsWith("--trace=")) {
+            trace = true;
+            tracePath = option.substring("--trace=".length());
+        } else if (option.equals("--no-opt")) {
+            optimizer = null;
+        } else if (option.startsWith("--engine=")) {
+            return selectEngine(option.substring("--engine=".length()));
+        } else if (option.startsWith("--tier-calls=")) {
+            tierOptions = true;
+            invocationThreshold = parseThreshold(option.substring("--tier-calls=".length()));
+            return invocationThreshold > 0;
+        } else if (option.startsWith("--tier-loops=")) {
+            tierOptions = true;
+            backEdgeThreshold = parseThreshold(option.substring("--tier-loops=".length()));
+            return backEdgeThreshold > 0;
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Chooses how programs are executed.
+     *
+     * @param engine One of "tree", "tiered", "closure", "jit" or "vm"
+     * @return false if the engine is not recognized
+     */
+    private static boolean selectEngine(String engine) {
+        compiler = null;
+        vm = null;
+        tiered = false;
+        switch (engine) {
+            case "tree":
+                return true;
+            case "tiered":
+                tiered = true;
+                return true;
+            case "closure":
+                compiler = new ClosureCompiler(interpreter, false);
+                return true;
+            case "jit":
+                compiler = new ClosureCompiler(interpreter, true);
+                return true;
+            case "vm":
+                vm = new VM();
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parses the value of a threshold option.
+     *
+     * @param value The text after the option's equals sign
+     * @return The threshold, or -1 if the value is not a positive number
+     */
+    private static int parseThreshold(String value) {
+        try {
+            int threshold = Integer.parseInt(value);
+            return threshold > 0 ? threshold : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Prints the command line usage and exits.
+     */
+    private static void usage() {
+        System.out.println("Usage: jlox [--trace[=file]] [--no-opt] [--engine=tree|tiered|closure|jit|vm]" +
+                " [--tier-calls=n] [--tier-loops=n] [script]");
+        System.exit(64);
+    }
+
+    /**
+     * Reports options that cannot be used together and exits.
+     *
+     * @param message Explains which options conflict
+     */
+    private static void conflict(String message) {
+        System.out.println(message);
+        System.exit(64);
+    }
+
     /**
      * Executes a Lox script file.
      * 
@@ -48,7 +190,7 @@ public class Lox {
      */
     private static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        run(new String(bytes, Charset.defaultCharset()), true);
         if (Lox.hadError) System.exit(65);
         if (Lox.hadRuntimeError) System.exit(70);
     }
@@ -67,18 +209,20 @@ public class Lox {
             System.out.print("> ");
             String line = reader.readLine();
             if (line == null) break;
-            run(line);
+            run(line, false);
             hadError = false;
         }
     }
 
     /**
      * Core method that processes and executes Lox source code.
-     * Handles scanning, parsing, resolving, and interpreting the code.
+     * Handles scanning, parsing, resolving, optimization, type inference and interpreting the code.
      *
      * @param source The Lox source code to execute
+     * @param wholeProgram Whether the source is the whole program, rather than one
+     *                     line at the prompt
      */
-    private static void run(String source) {
+    private static void run(String source, boolean wholeProgram) {
         Scanner scanner = new Scanner(source);
         List<Token> tokens = scanner.scanTokens();
 
@@ -87,12 +231,25 @@ public class Lox {
 
         if (hadError) return;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver();
         resolver.resolve(statements);
 
         if (hadError) return;
 
-        interpreter.interpret(statements);
+        if (optimizer != null) optimizer.run(statements);
+        new TypeInference(wholeProgram).infer(statements);
+
+        if (vm != null) {
+            if (vm.interpret(statements) == VM.InterpretResult.RUNTIME_ERROR) {
+                hadRuntimeError = true;
+            }
+        } else if (compiler != null) {
+            compiler.run(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
+
+        if (tracer != null) tracer.flush(System.err);
     }
 
     /**
@@ -101,7 +258,7 @@ public class Lox {
      * @param line Line number where the error occurred
      * @param message Error message describing the problem
      */
-    static void error(int line, String message) {
+    public static void error(int line, String message) {
         report(line, "", message);
     }
 
@@ -111,7 +268,7 @@ public class Lox {
      * @param token The token where the error occurred
      * @param message Error message describing the problem
      */
-    static void error(Token token, String message) {
+    public static void error(Token token, String message) {
         if (token.type == TokenType.EOF) {
             report(token.line, " at end", message);
         } else {
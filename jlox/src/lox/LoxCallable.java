@@ -1,9 +1,29 @@
 package lox;
 
-import java.util.List;
-
 public interface LoxCallable {
+    Object[] NO_ARGUMENTS = new Object[0];
+
     int arity();
 
-    Object call(Interpreter interpreter, List<Object> arguments);
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    // Entry points for calls with few arguments, so that callers pass the values
+    // directly instead of allocating an array. Callables that can take them
+    // straight into their own storage override these.
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, NO_ARGUMENTS);
+    }
+
+    default Object call1(Interpreter interpreter, Object a) {
+        return call(interpreter, new Object[] {a});
+    }
+
+    default Object call2(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, new Object[] {a, b});
+    }
+
+    default Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, new Object[] {a, b, c});
+    }
 }
@@ -1,47 +1,108 @@
 package lox;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 public class LoxClass implements LoxCallable {
+    private static final Symbol INIT = Symbol.intern("init");
+
     final String name;
-    final Map<String, LoxFunction> methods;
     final LoxClass superclass;
+    // Shape of a new instance, before it has any fields
+    final Shape shape = new Shape();
+
+    // Every method of the class, inherited ones included, resolved when the class is
+    // created. An inherited method keeps the index it has in the superclass, and an
+    // override replaces it at that index.
+    private final Map<Symbol, Integer> methodIndices;
+    private final LoxFunction[] methodTable;
 
-    LoxClass(String name, LoxClass superclass,Map<String, LoxFunction> methods) {
+    // Resolved once so that construction does no lookups
+    private final LoxFunction initializer;
+    private final int arity;
+    // Number of fields instances of the class have needed so far; new instances
+    // start with that much room so they do not grow as the initializer runs
+    int fieldCapacity = 0;
+
+    LoxClass(String name, LoxClass superclass,Map<Symbol, LoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
-        this.methods = methods;
-    }
 
-    LoxFunction findMethod(String name) {
-        if (methods.containsKey(name)) {
-            return methods.get(name);
+        if (superclass == null) {
+            this.methodIndices = new HashMap<>();
+        } else {
+            this.methodIndices = new HashMap<>(superclass.methodIndices);
         }
-
-        if (superclass != null) {
-            return superclass.findMethod(name);
+        int inherited = methodIndices.size();
+        LoxFunction[] table = superclass == null
+                ? new LoxFunction[methods.size()]
+                : Arrays.copyOf(superclass.methodTable, inherited + methods.size());
+        int size = inherited;
+        for (Map.Entry<Symbol, LoxFunction> method : methods.entrySet()) {
+            Integer index = methodIndices.get(method.getKey());
+            if (index == null) {
+                index = size++;
+                methodIndices.put(method.getKey(), index);
+            }
+            table[index] = method.getValue();
         }
+        this.methodTable = Arrays.copyOf(table, size);
+
+        this.initializer = findMethod(INIT);
+        this.arity = initializer == null ? 0 : initializer.arity();
+    }
 
-        return null;
+    LoxFunction findMethod(Symbol name) {
+        Integer index = methodIndices.get(name);
+        return index == null ? null : methodTable[index];
+    }
+
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        LoxInstance instance = new LoxInstance(this);
+        if (initializer != null) {
+            initializer.call(interpreter, instance, arguments);
+        }
+        return instance;
     }
 
+    // A class with no initializer takes no arguments, so only call0 has to check for one.
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
+    public Object call0(Interpreter interpreter) {
         LoxInstance instance = new LoxInstance(this);
-        LoxFunction initializer = findMethod("init");
         if (initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
+            initializer.call0(interpreter, instance);
         }
         return instance;
     }
 
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.call1(interpreter, instance, a);
+        return instance;
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.call2(interpreter, instance, a, b);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        LoxInstance instance = new LoxInstance(this);
+        initializer.call3(interpreter, instance, a, b, c);
+        return instance;
+    }
+
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
-        if (initializer == null) return 0;
-        return initializer.arity();
+        return arity;
     }
 
     @Override
@@ -1,16 +1,22 @@
 package lox;
 
-import java.util.List;
-
 public class LoxFunction implements LoxCallable {
     private final Stmt.Function declaration;
-    private final Environment closure;
+    // Only the variables the function actually uses from enclosing functions
+    private final Object[] captures;
+    // Instance a method is bound to, occupying the first slot of its frame
+    private final LoxInstance receiver;
     private boolean isInitializer = false;
 
-    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    LoxFunction(Stmt.Function declaration, Object[] captures, boolean isInitializer) {
+        this(declaration, captures, null, isInitializer);
+    }
+
+    private LoxFunction(Stmt.Function declaration, Object[] captures, LoxInstance receiver, boolean isInitializer) {
         this.isInitializer = isInitializer;
         this.declaration = declaration;
-        this.closure = closure;
+        this.captures = captures;
+        this.receiver = receiver;
     }
 
     @Override
@@ -19,28 +25,122 @@ public class LoxFunction implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
-        for (int i = 0; i < arity(); ++i) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        return call(interpreter, receiver, arguments);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return call0(interpreter, receiver);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object a) {
+        return call1(interpreter, receiver, a);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object a, Object b) {
+        return call2(interpreter, receiver, a, b);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object a, Object b, Object c) {
+        return call3(interpreter, receiver, a, b, c);
+    }
+
+    /**
+     * Calls the function with the given receiver in place of its own, so that a
+     * method can run on an instance without being bound to it first.
+     */
+    Object call(Interpreter interpreter, LoxInstance receiver, Object[] arguments) {
+        Frame frame = frame(receiver);
+        System.arraycopy(arguments, 0, frame.slots, firstParam(receiver), arguments.length);
+        return run(interpreter, receiver, frame);
+    }
+
+    // The fixed-arity forms write their arguments straight into the parameter slots.
+
+    Object call0(Interpreter interpreter, LoxInstance receiver) {
+        return run(interpreter, receiver, frame(receiver));
+    }
+
+    Object call1(Interpreter interpreter, LoxInstance receiver, Object a) {
+        Frame frame = frame(receiver);
+        frame.slots[firstParam(receiver)] = a;
+        return run(interpreter, receiver, frame);
+    }
+
+    Object call2(Interpreter interpreter, LoxInstance receiver, Object a, Object b) {
+        Frame frame = frame(receiver);
+        int slot = firstParam(receiver);
+        frame.slots[slot] = a;
+        frame.slots[slot + 1] = b;
+        return run(interpreter, receiver, frame);
+    }
+
+    Object call3(Interpreter interpreter, LoxInstance receiver, Object a, Object b, Object c) {
+        Frame frame = frame(receiver);
+        int slot = firstParam(receiver);
+        frame.slots[slot] = a;
+        frame.slots[slot + 1] = b;
+        frame.slots[slot + 2] = c;
+        return run(interpreter, receiver, frame);
+    }
+
+    // Creates the frame of a call, with the receiver of a method in its first slot
+    private Frame frame(LoxInstance receiver) {
+        Frame frame = new Frame(captures, declaration.slots);
+        if (receiver != null) {
+            frame.slots[0] = receiver;
         }
+        return frame;
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch (Return returnValue) {
-            if (isInitializer) return closure.getAt(0, "this");
-            return returnValue.value;
+    private static int firstParam(LoxInstance receiver) {
+        return receiver == null ? 0 : 1;
+    }
+
+    // Runs the body once the parameters are in place. A body that ends in a tail
+    // call hands the call back, and it runs here in place of the returning function.
+    private Object run(Interpreter interpreter, LoxInstance receiver, Frame frame) {
+        LoxFunction function = this;
+        for (;;) {
+            Object completion = function.execute(interpreter, frame);
+
+            if (completion instanceof TailCall) {
+                TailCall call = (TailCall) completion;
+                function = call.function;
+                receiver = call.receiver;
+                frame = function.frame(receiver);
+                System.arraycopy(call.arguments, 0, frame.slots, firstParam(receiver), call.arguments.length);
+                continue;
+            }
+
+            if (function.isInitializer) return receiver;
+            if (completion == Completion.NORMAL) return null;
+
+            return completion;
+        }
+    }
+
+    private Object execute(Interpreter interpreter, Frame frame) {
+        for (int cell : declaration.cellParams) {
+            frame.slots[cell] = new Cell(frame.slots[cell]);
         }
 
-        if (isInitializer) return closure.getAt(0, "this");
+        ClosureCompiler.StmtNode compiled = declaration.compiled;
+        if (compiled != null) return compiled.execute(frame);
+        return interpreter.executeFunction(declaration, frame);
+    }
 
-        return null;
+    // Defers a call to the function for the caller's trampoline
+    TailCall tailCall(Object[] arguments) {
+        return new TailCall(this, receiver, arguments);
     }
 
     LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return new LoxFunction(declaration, captures, instance, isInitializer);
     }
 
     @Override
@@ -1,31 +1,29 @@
 package lox;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final LoxClass klass;
+    // Layout of the fields; instances with the same fields share it
+    Shape shape;
+    Object[] fields;
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
+        this.shape = klass.shape;
+        this.fields = new Object[klass.fieldCapacity];
     }
 
-    Object get(Token name) {
-        if (fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+    // Writes the field at index, moving the instance to shape first
+    void store(Shape shape, int index, Object value) {
+        if (shape != this.shape) {
+            if (index >= fields.length) {
+                fields = Arrays.copyOf(fields, Math.max(fields.length * 2, index + 1));
+                if (index >= klass.fieldCapacity) klass.fieldCapacity = index + 1;
+            }
+            this.shape = shape;
         }
-
-        LoxFunction method = klass.findMethod(name.lexeme);
-        if (method != null) {
-            return method.bind(this);
-        }
-
-        throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
-    }
-
-    void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+        fields[index] = value;
     }
 
     @Override
@@ -305,7 +305,7 @@ public class Parser {
         Stmt body = statement();
 
         if (increment != null) {
-            body = new Stmt.Block(Arrays.asList(body, new Stmt.Expression(increment)));
+            body = new Stmt.Block(new ArrayList<>(Arrays.asList(body, new Stmt.Expression(increment))));
         }
 
         if (condition == null) {
@@ -315,7 +315,7 @@ public class Parser {
         body = new Stmt.While(condition, body);
 
         if (initializer != null) {
-            body = new Stmt.Block(Arrays.asList(initializer, body));
+            body = new Stmt.Block(new ArrayList<>(Arrays.asList(initializer, body)));
         }
 
         return body;
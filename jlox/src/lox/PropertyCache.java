@@ -0,0 +1,112 @@
+package lox;
+
+/**
+ * Inline cache of an Expr.Get or Expr.Set site.
+ * Remembers where the field was found for the last few instance shapes seen at
+ * the site, so a hit is a reference comparison and an array access. A site that
+ * sees more shapes than the cache holds goes megamorphic and uses the shape's
+ * own lookup from then on.
+ * Every class has its own root shape, so a shape also identifies the class of the
+ * receiver: when the property is a method, the entry holds the resolved method.
+ */
+final class PropertyCache {
+    private static final int MAX_ENTRIES = 4;
+
+    private final Shape[] shapes = new Shape[MAX_ENTRIES];
+    // Field index, or -1 when the property is the method in methods[i]
+    private final int[] indices = new int[MAX_ENTRIES];
+    private final LoxFunction[] methods = new LoxFunction[MAX_ENTRIES];
+    // Shape of the instance after the access; differs from shapes[i] when a Set adds the field
+    private final Shape[] transitions = new Shape[MAX_ENTRIES];
+    private int count = 0;
+    private boolean megamorphic = false;
+
+    /**
+     * Reads a property, falling back to methods when the instance has no such field.
+     */
+    Object get(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                int index = indices[i];
+                return index >= 0 ? instance.fields[index] : methods[i].bind(instance);
+            }
+        }
+
+        int index = shape.indexOf(name.symbol);
+        if (index >= 0) {
+            add(shape, index, shape, null);
+            return instance.fields[index];
+        }
+
+        LoxFunction method = instance.klass.findMethod(name.symbol);
+        if (method == null) {
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        }
+        add(shape, -1, shape, method);
+        return method.bind(instance);
+    }
+
+    /**
+     * Finds the method a call through this site runs, without binding it.
+     *
+     * @return The method, or null if the property is a field
+     */
+    LoxFunction method(LoxInstance instance, Token name) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) return methods[i];
+        }
+
+        int index = shape.indexOf(name.symbol);
+        if (index >= 0) {
+            add(shape, index, shape, null);
+            return null;
+        }
+
+        LoxFunction method = instance.klass.findMethod(name.symbol);
+        if (method == null) {
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
+        }
+        add(shape, -1, shape, method);
+        return method;
+    }
+
+    /**
+     * Writes a field, adding it to the instance if it is new.
+     */
+    void set(LoxInstance instance, Token name, Object value) {
+        Shape shape = instance.shape;
+        for (int i = 0; i < count; i++) {
+            if (shapes[i] == shape) {
+                instance.store(transitions[i], indices[i], value);
+                return;
+            }
+        }
+
+        int index = shape.indexOf(name.symbol);
+        Shape next = shape;
+        if (index < 0) {
+            index = shape.size;
+            next = shape.with(name.symbol);
+        }
+
+        add(shape, index, next, null);
+        instance.store(next, index, value);
+    }
+
+    private void add(Shape shape, int index, Shape transition, LoxFunction method) {
+        if (megamorphic) return;
+        if (count == MAX_ENTRIES) {
+            megamorphic = true;
+            count = 0;
+            return;
+        }
+
+        shapes[count] = shape;
+        indices[count] = index;
+        transitions[count] = transition;
+        methods[count] = method;
+        count++;
+    }
+}
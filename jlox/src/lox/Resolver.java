@@ -1,13 +1,14 @@
 package lox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
+    private FunctionScope function = new FunctionScope(null, null, 0);
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
 
@@ -24,8 +25,51 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SUBCLASS
     }
 
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    // A local variable: where it lives and how nested functions use it
+    private static class Local {
+        final int slot;
+        // Index of the declaring scope in the scope stack
+        final int scope;
+        // Function whose frame holds the local
+        final FunctionScope function;
+        // Declaring statement, null for parameters and implicit locals
+        Stmt.Declaration declaration = null;
+        // Every expression that reads or writes the local
+        final List<Expr.Resolvable> uses = new ArrayList<>();
+        boolean defined = false;
+        boolean captured = false;
+        boolean mutated = false;
+
+        Local(int slot, int scope, FunctionScope function) {
+            this.slot = slot;
+            this.scope = scope;
+            this.function = function;
+        }
+
+        // Captured locals that can change after a closure copies them must be shared through a Cell
+        boolean needsCell() {
+            return captured && mutated;
+        }
+    }
+
+    // The function (or top-level code) whose scopes are being resolved and the variables it captures
+    private static class FunctionScope {
+        final FunctionScope enclosing;
+        // Null for top-level code
+        final Stmt.Function declaration;
+        // Index in the scope stack of the function's outermost scope
+        final int base;
+        final List<Capture> captures = new ArrayList<>();
+        final Map<Local, Integer> captureIndices = new HashMap<>();
+
+        FunctionScope(FunctionScope enclosing, Stmt.Function declaration, int base) {
+            this.enclosing = enclosing;
+            this.declaration = declaration;
+            this.base = base;
+        }
+    }
+
+    Resolver() {
     }
 
     void resolve(List<Stmt> statements) {
@@ -42,51 +86,150 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expr.accept(this);
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private Local resolveLocal(Expr.Resolvable expr, Token name) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - i - 1);
-                return;
+            Local local = scopes.get(i).get(name.lexeme);
+            if (local != null) {
+                local.uses.add(expr);
+                if (local.function == function) {
+                    expr.depth = scopes.size() - i - 1;
+                    expr.slot = local.slot;
+                } else {
+                    local.captured = true;
+                    expr.depth = Expr.Resolvable.CAPTURED;
+                    expr.slot = capture(function, local);
+                }
+                return local;
             }
         }
+        return null;
+    }
+
+    /**
+     * Adds a local of an enclosing function to the captures of the given function,
+     * threading it through every function in between.
+     *
+     * @param function The function that uses the local
+     * @param local The captured local
+     * @return The index of the local in the function's captures
+     */
+    private int capture(FunctionScope function, Local local) {
+        Integer index = function.captureIndices.get(local);
+        if (index != null) return index;
+
+        Capture capture;
+        if (local.function == function.enclosing) {
+            // The closure is created in the scope just outside the function's own scopes.
+            capture = new Capture(true, function.base - 1 - local.scope, local.slot);
+        } else {
+            capture = new Capture(false, 0, capture(function.enclosing, local));
+        }
+
+        function.captures.add(capture);
+        function.captureIndices.put(local, function.captures.size() - 1);
+        return function.captures.size() - 1;
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<String, Boolean>());
+        scopes.push(new HashMap<String, Local>());
     }
 
-    private void endScope() {
-        scopes.pop();
+    /**
+     * Closes the innermost scope.
+     *
+     * @return The number of slots the scope's frame needs
+     */
+    private int endScope() {
+        Map<String, Local> scope = scopes.pop();
+        for (Local local : scope.values()) {
+            if (!local.needsCell()) continue;
+
+            for (Expr.Resolvable use : local.uses) {
+                use.cell = true;
+            }
+            if (local.declaration != null) {
+                local.declaration.cell = true;
+            }
+        }
+        return scope.size();
     }
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        if (!declaresAnything(stmt.statements)) {
+            // Without bindings the scope would be empty, so the block shares the enclosing one.
+            stmt.needsFrame = false;
+            resolve(stmt.statements);
+            return null;
+        }
+
         beginScope();
         resolve(stmt.statements);
-        endScope();
+        stmt.slots = endScope();
         return null;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) return;
+    // Declarations can only appear directly in a block, never nested in another statement.
+    private static boolean declaresAnything(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Declaration) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Declares a name in the innermost scope, giving it the next free slot.
+     *
+     * @param name The name being declared
+     * @return The new local, or null for a global
+     */
+    private Local declare(Token name) {
+        if (scopes.isEmpty()) return null;
 
-        Map<String, Boolean> scope = scopes.peek();
+        Map<String, Local> scope = scopes.peek();
         if (scope.containsKey(name.lexeme)) {
             Lox.error(name,
                     "Already a variable with this name in this scope.");
         }
 
-        scope.put(name.lexeme, false);
+        Local local = new Local(scope.size(), scopes.size() - 1, function);
+        scope.put(name.lexeme, local);
+        return local;
+    }
+
+    private void declare(Stmt.Declaration declaration) {
+        Local local = declare(declaration.name);
+        if (local == null) return;
+
+        local.declaration = declaration;
+        declaration.slot = local.slot;
     }
 
     private void define(Token name) {
         if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
+    }
+
+    // Declares an implicit, already defined local such as 'this' or 'super'
+    private void defineImplicit(String name) {
+        Map<String, Local> scope = scopes.peek();
+        Local local = new Local(scope.size(), scopes.size() - 1, function);
+        local.defined = true;
+        scope.put(name, local);
+    }
+
+    // A declaration captured by its own body is closed over before its name is bound,
+    // so the binding has to be shared through a cell.
+    private void checkSelfCapture(Stmt.Declaration declaration) {
+        if (scopes.isEmpty()) return;
+
+        Local local = scopes.peek().get(declaration.name.lexeme);
+        if (local.captured) local.mutated = true;
     }
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        declare(stmt);
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -96,7 +239,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
+        if (!scopes.isEmpty() && scopes.peek().containsKey(expr.name.lexeme)
+                && !scopes.peek().get(expr.name.lexeme).defined) {
             Lox.error(expr.name, "Can't read local variable in its own initializer.");
         }
         resolveLocal(expr, expr.name);
@@ -106,31 +250,50 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        Local local = resolveLocal(expr, expr.name);
+        if (local != null) local.mutated = true;
         return null;
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
+        FunctionScope enclosingScope = this.function;
         currentFunction = type;
+        this.function = new FunctionScope(enclosingScope, function, scopes.size());
 
         beginScope();
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            defineImplicit("this");
+        }
+        List<Local> params = new ArrayList<>();
         for (Token param : function.params) {
-            declare(param);
+            params.add(declare(param));
             define(param);
         }
         resolve(function.body);
-        endScope();
 
+        int cells = 0;
+        for (Local param : params) {
+            if (param.needsCell()) cells++;
+        }
+        function.cellParams = new int[cells];
+        for (Local param : params) {
+            if (param.needsCell()) function.cellParams[--cells] = param.slot;
+        }
+        function.captures = this.function.captures;
+        function.slots = endScope();
+
+        this.function = enclosingScope;
         currentFunction = enclosingFunction;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        declare(stmt);
         define(stmt.name);
 
         resolveFunction(stmt, FunctionType.FUNCTION);
+        checkSelfCapture(stmt);
         return null;
     }
 
@@ -163,6 +326,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             if (currentFunction == FunctionType.INITIALIZER) {
                 Lox.error(stmt.keyword, "Can't return a value from an initializer.");
             }
+            stmt.tailCall = stmt.value instanceof Expr.Call;
             resolve(stmt.value);
         }
         return null;
@@ -170,6 +334,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
+        stmt.function = function.declaration;
         resolve(stmt.condition);
         resolve(stmt.body);
         return null;
@@ -185,6 +350,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitCallExpr(Expr.Call expr) {
         resolve(expr.callee);
+        if (expr.callee instanceof Expr.Get) {
+            expr.invoked = (Expr.Get) expr.callee;
+        } else if (expr.callee instanceof Expr.Super) {
+            expr.invokedSuper = (Expr.Super) expr.callee;
+        }
 
         for (Expr argument : expr.arguments) {
             resolve(argument);
@@ -222,7 +392,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        declare(stmt);
         define(stmt.name);
 
         if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme) ) {
@@ -234,12 +404,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             currentClass = ClassType.SUBCLASS;
             resolve(stmt.superclass);
             beginScope();
-            scopes.peek().put("super", true);
+            defineImplicit("super");
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
-
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
             if (method.name.lexeme.equals("init")) {
@@ -248,12 +415,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolveFunction(method, declaration);
         }
 
-        endScope();
-
         if (stmt.superclass != null) {
             endScope();
         }
 
+        checkSelfCapture(stmt);
+
         currentClass = enclosingClass;
 
         return null;
@@ -290,6 +457,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             throw new RuntimeError(expr.keyword, "Can't use 'super' in a class with no superclass.");
         }
         resolveLocal(expr, expr.keyword);
+        resolveLocal(expr.receiver, expr.receiver.keyword);
         return null;
     }
 }
@@ -0,0 +1,112 @@
+package lox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A Lox string built by concatenation, kept as the pair of strings it joins.
+ * Concatenating onto a rope takes constant time, so a loop that appends to a string
+ * no longer copies the whole string on every iteration. The characters are copied
+ * into a flat String once, the first time something reads them, such as printing or
+ * comparing; after that the rope just holds the flat String.
+ * Lox strings are either Strings or Ropes, and both are CharSequences.
+ */
+public final class Rope implements CharSequence {
+    // Shorter results are plain Strings, since copying them is cheaper than the rope
+    private static final int MIN_LENGTH = 256;
+
+    private final int length;
+    // The concatenated strings, or null once flattened
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right, int length) {
+        this.left = left;
+        this.right = right;
+        this.length = length;
+    }
+
+    /**
+     * Concatenates two Lox strings.
+     *
+     * @param left A String or Rope
+     * @param right A String or Rope
+     * @return The concatenation, as a Rope if it is long enough to be worth one
+     */
+    public static CharSequence concat(CharSequence left, CharSequence right) {
+        if (left.length() == 0) return right;
+        if (right.length() == 0) return left;
+
+        int length = left.length() + right.length();
+        if (length < MIN_LENGTH) return left.toString().concat(right.toString());
+        return new Rope(left, right, length);
+    }
+
+    /**
+     * Compares values where either one may be a Rope, which is equal to any String or
+     * Rope with the same characters.
+     */
+    public static boolean isEqual(Object a, Object b) {
+        if (!(a instanceof CharSequence) || !(b instanceof CharSequence)) return false;
+        if (((CharSequence) a).length() != ((CharSequence) b).length()) return false;
+        return a.toString().equals(b.toString());
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().subSequence(start, end);
+    }
+
+    @Override
+    public String toString() {
+        if (flat == null) flatten();
+        return flat;
+    }
+
+    // Copies the characters right to left with an explicit stack, since a string
+    // built in a loop is a rope as deep as the loop ran.
+    private void flatten() {
+        char[] chars = new char[length];
+        int end = length;
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            CharSequence part = pending.pop();
+            if (part instanceof Rope && ((Rope) part).flat == null) {
+                Rope rope = (Rope) part;
+                pending.push(rope.left);
+                pending.push(rope.right);
+                continue;
+            }
+
+            String text = part.toString();
+            end -= text.length();
+            text.getChars(0, text.length(), chars, end);
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Rope && isEqual(this, other);
+    }
+
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -20,26 +20,26 @@ public class Scanner {
     private final List<Token> tokens = new ArrayList<>();
 
     // Lookup table for reserved keywords
-    private static final Map<String, TokenType> keywords;
+    private static final Map<Symbol, TokenType> keywords;
 
     static {
         keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
+        keywords.put(Symbol.intern("and"), AND);
+        keywords.put(Symbol.intern("class"), CLASS);
+        keywords.put(Symbol.intern("else"), ELSE);
+        keywords.put(Symbol.intern("false"), FALSE);
+        keywords.put(Symbol.intern("for"), FOR);
+        keywords.put(Symbol.intern("fun"), FUN);
+        keywords.put(Symbol.intern("if"), IF);
+        keywords.put(Symbol.intern("nil"), NIL);
+        keywords.put(Symbol.intern("or"), OR);
+        keywords.put(Symbol.intern("print"), PRINT);
+        keywords.put(Symbol.intern("return"), RETURN);
+        keywords.put(Symbol.intern("super"), SUPER);
+        keywords.put(Symbol.intern("this"), THIS);
+        keywords.put(Symbol.intern("true"), TRUE);
+        keywords.put(Symbol.intern("var"), VAR);
+        keywords.put(Symbol.intern("while"), WHILE);
     }
 
     // Start position of the current lexeme being scanned
@@ -293,10 +293,11 @@ public class Scanner {
     private void identifier() {
         while (isAlphaNumeric(peek())) advance();
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
+        // Interning finds names seen before without copying them out of the source.
+        Symbol symbol = Symbol.intern(source, start, current);
+        TokenType type = keywords.get(symbol);
         if (type == null) type = IDENTIFIER;
-        addToken(type);
+        tokens.add(new Token(type, symbol, line));
     }
 
     /**
@@ -0,0 +1,50 @@
+package lox;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Describes the fields of a LoxInstance and where each is stored.
+ * Instances that gained the same fields in the same order share one shape, so a
+ * field lookup is a map probe on the shape and the value lives in a plain array on
+ * the instance. Fields are keyed by Symbol, which hashes and compares without
+ * reading the name. Adding a field moves an instance to the shape that follows its
+ * current one for that name; those transitions are created once and reused.
+ */
+final class Shape {
+    // Index of each field in the instance's field array
+    private final Map<Symbol, Integer> indices;
+    private final Map<Symbol, Shape> transitions = new HashMap<>();
+    final int size;
+
+    Shape() {
+        this.indices = new HashMap<>();
+        this.size = 0;
+    }
+
+    private Shape(Shape parent, Symbol name) {
+        this.indices = new HashMap<>(parent.indices);
+        this.indices.put(name, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    /**
+     * @return The index of the field in the instance's field array, or -1 if there is no such field
+     */
+    int indexOf(Symbol name) {
+        Integer index = indices.get(name);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return The shape of an instance with this shape after it gains the named field
+     */
+    Shape with(Symbol name) {
+        Shape next = transitions.get(name);
+        if (next == null) {
+            next = new Shape(this, name);
+            transitions.put(name, next);
+        }
+        return next;
+    }
+}
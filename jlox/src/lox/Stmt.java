@@ -2,9 +2,10 @@ package lox;
 
 import java.util.List;
 
+// As in Expr, the passes in lox.opt replace children in place.
 public abstract class Stmt {
 
-    interface Visitor<R> {
+    public interface Visitor<R> {
         R visitExpressionStmt(Expression stmt);
 
         R visitPrintStmt(Print stmt);
@@ -24,17 +25,29 @@ public abstract class Stmt {
         R visitClassStmt(Class stmt);
     }
 
-    abstract <R> R accept(Visitor<R> visitor);
+    public abstract <R> R accept(Visitor<R> visitor);
+
+    public abstract static class Declaration extends Stmt {
+        Declaration(Token name) {
+            this.name = name;
+        }
+
+        public final Token name;
+        // Slot of the declared local in the current frame, -1 for globals
+        int slot = -1;
+        // Whether the slot holds a Cell shared with closures
+        boolean cell = false;
+    }
 
     public static class Expression extends Stmt {
         Expression(Expr expression) {
             this.expression = expression;
         }
 
-        final Expr expression;
+        public Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitExpressionStmt(this);
         }
     }
@@ -44,25 +57,24 @@ public abstract class Stmt {
             this.expression = expression;
         }
 
-        final Expr expression;
+        public Expr expression;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitPrintStmt(this);
         }
     }
 
-    public static class Var extends Stmt {
+    public static class Var extends Declaration {
         Var(Token name, Expr initializer) {
-            this.name = name;
+            super(name);
             this.initializer = initializer;
         }
 
-        final Token name;
-        Expr initializer;
+        public Expr initializer;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitVarStmt(this);
         }
     }
@@ -72,10 +84,14 @@ public abstract class Stmt {
             this.statements = statements;
         }
 
-        final List<Stmt> statements;
+        public final List<Stmt> statements;
+        // Number of locals the block declares, filled in by the Resolver
+        int slots;
+        // False when the block declares nothing and can run in the enclosing frame
+        boolean needsFrame = true;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitBlockStmt(this);
         }
     }
@@ -87,12 +103,12 @@ public abstract class Stmt {
             this.elseBranch = elseBranch;
         }
 
-        final Expr condition;
-        final Stmt thenBranch;
-        final Stmt elseBranch;
+        public Expr condition;
+        public Stmt thenBranch;
+        public Stmt elseBranch;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitIfStmt(this);
         }
     }
@@ -103,28 +119,44 @@ public abstract class Stmt {
             this.body = body;
         }
 
-        final Expr condition;
-        final Stmt body;
+        public Expr condition;
+        public Stmt body;
+        // Function the loop is in, null for a loop in top-level code
+        Function function;
+        // Iterations run by the Interpreter, counted to find hot loops
+        int backEdges;
+        // Loop compiled for on-stack replacement, null while it is interpreted
+        volatile ClosureCompiler.StmtNode compiled;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitWhileStmt(this);
         }
     }
 
-    public static class Function extends Stmt {
+    public static class Function extends Declaration {
         Function(Token name, List<Token> params, List<Stmt> body) {
-            this.name = name;
+            super(name);
             this.params = params;
             this.body = body;
         }
 
-        final Token name;
-        final List<Token> params;
-        final List<Stmt> body;
+        public final List<Token> params;
+        public final List<Stmt> body;
+        // Number of locals in the function's frame, parameters included
+        int slots;
+        // Variables of enclosing functions the function closes over
+        List<Capture> captures;
+        // Slots of parameters that have to be wrapped in a Cell on entry
+        int[] cellParams;
+        // Body compiled by the ClosureCompiler, null while the function is interpreted.
+        // Volatile because tiered execution compiles it on a background thread.
+        volatile ClosureCompiler.StmtNode compiled;
+        // Calls made while the function is interpreted, counted to find hot functions
+        int invocations;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitFunctionStmt(this);
         }
     }
@@ -135,28 +167,29 @@ public abstract class Stmt {
             this.value = value;
         }
 
-        final Token keyword;
-        final Expr value;
+        public final Token keyword;
+        public Expr value;
+        // Whether the value is a call whose result the function returns as it is
+        boolean tailCall;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitReturnStmt(this);
         }
     }
 
-    public static class Class extends Stmt {
+    public static class Class extends Declaration {
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
-            this.name = name;
+            super(name);
             this.superclass = superclass;
             this.methods = methods;
         }
 
-        final Token name;
-        final Expr.Variable superclass;
-        final List<Stmt.Function> methods;
+        public final Expr.Variable superclass;
+        public final List<Stmt.Function> methods;
 
         @Override
-        <R> R accept(Visitor<R> visitor) {
+        public <R> R accept(Visitor<R> visitor) {
             return visitor.visitClassStmt(this);
         }
     }
@@ -0,0 +1,88 @@
+package lox;
+
+/**
+ * An interned identifier.
+ * The Scanner interns every word it reads, so all occurrences of a name share one
+ * Symbol and one String. Symbols compare by identity and carry their hash, which
+ * makes them cheap keys for the runtime's shapes and method tables, and each has a
+ * dense id that globals are stored by.
+ */
+public final class Symbol {
+    // Open addressing table of every symbol, probed by the hash of the name
+    private static Symbol[] table = new Symbol[1024];
+    private static int count = 0;
+
+    public final String name;
+    // Symbols are numbered from 0 in the order they are interned
+    public final int id;
+    private final int hash;
+
+    private Symbol(String name, int id, int hash) {
+        this.name = name;
+        this.id = id;
+        this.hash = hash;
+    }
+
+    static Symbol intern(String name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Finds the symbol for a region of the source, creating it the first time the
+     * name is seen. Known names are found without copying the region.
+     *
+     * @param source The text the name is in
+     * @param start Index of the first character of the name
+     * @param end Index after the last character of the name
+     * @return The one symbol with that name
+     */
+    static synchronized Symbol intern(String source, int start, int end) {
+        int length = end - start;
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = table.length - 1;
+        int i = spread(hash) & mask;
+        for (Symbol symbol = table[i]; symbol != null; symbol = table[i]) {
+            if (symbol.hash == hash && symbol.name.length() == length
+                    && symbol.name.regionMatches(0, source, start, length)) {
+                return symbol;
+            }
+            i = (i + 1) & mask;
+        }
+
+        Symbol symbol = new Symbol(source.substring(start, end), count++, hash);
+        table[i] = symbol;
+        if (count * 2 > table.length) grow();
+        return symbol;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void grow() {
+        Symbol[] old = table;
+        table = new Symbol[old.length * 2];
+        int mask = table.length - 1;
+        for (Symbol symbol : old) {
+            if (symbol == null) continue;
+
+            int i = spread(symbol.hash) & mask;
+            while (table[i] != null) i = (i + 1) & mask;
+            table[i] = symbol;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
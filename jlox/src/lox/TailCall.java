@@ -0,0 +1,19 @@
+package lox;
+
+/**
+ * Completion of a return statement whose value is a call to a Lox function.
+ * Instead of making the call, the statement hands it back to LoxFunction, which
+ * runs it in place of the function that is returning, so calls in tail position
+ * do not grow the stack.
+ */
+final class TailCall {
+    final LoxFunction function;
+    final LoxInstance receiver;
+    final Object[] arguments;
+
+    TailCall(LoxFunction function, LoxInstance receiver, Object[] arguments) {
+        this.function = function;
+        this.receiver = receiver;
+        this.arguments = arguments;
+    }
+}
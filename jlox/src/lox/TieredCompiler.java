@@ -0,0 +1,67 @@
+package lox;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Promotes hot functions from the Interpreter to compiled code.
+ * Every function starts out interpreted, which costs nothing up front. The
+ * Interpreter counts the calls of each function and the iterations of each loop,
+ * and once a function passes either threshold its body is compiled on a background
+ * thread while interpretation goes on. The compiled body is published through the
+ * volatile Stmt.Function.compiled, and the next call of the function runs it.
+ * A hot loop is also compiled on its own and published through Stmt.While.compiled,
+ * so a loop that is still running moves to compiled code at its next iteration
+ * (on-stack replacement) instead of waiting for its function to be called again.
+ */
+class TieredCompiler {
+    // Calls after which a function is compiled when no threshold is given
+    static final int DEFAULT_INVOCATION_THRESHOLD = 1000;
+    // Loop iterations after which the enclosing function is compiled when no threshold is given
+    static final int DEFAULT_BACK_EDGE_THRESHOLD = 10000;
+
+    private final ClosureCompiler compiler;
+    private final int invocationThreshold;
+    private final int backEdgeThreshold;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "lox-compiler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param compiler Compiles the promoted functions; they are compiled one at a time
+     * @param invocationThreshold Calls after which a function is compiled
+     * @param backEdgeThreshold Iterations of one loop after which its function is compiled
+     */
+    TieredCompiler(ClosureCompiler compiler, int invocationThreshold, int backEdgeThreshold) {
+        this.compiler = compiler;
+        this.invocationThreshold = invocationThreshold;
+        this.backEdgeThreshold = backEdgeThreshold;
+    }
+
+    /**
+     * Counts a call of an interpreted function.
+     *
+     * @param function The function being called
+     */
+    void invoked(Stmt.Function function) {
+        if (++function.invocations == invocationThreshold) promote(function);
+    }
+
+    /**
+     * Counts an iteration of an interpreted loop.
+     *
+     * @param loop The loop about to run its body again
+     */
+    void backEdge(Stmt.While loop) {
+        if (++loop.backEdges != backEdgeThreshold) return;
+
+        executor.execute(() -> compiler.compileLoop(loop));
+        if (loop.function != null) promote(loop.function);
+    }
+
+    private void promote(Stmt.Function function) {
+        executor.execute(() -> compiler.compileFunction(function));
+    }
+}
@@ -1,16 +1,27 @@
 package lox;
 
 public class Token {
-    final TokenType type;
-    final String lexeme;
-    final Object literal;
-    final int line;
+    public final TokenType type;
+    public final String lexeme;
+    public final Object literal;
+    public final int line;
+    // The interned name of an identifier or keyword, null for other tokens
+    public final Symbol symbol;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
         this.lexeme = lexeme;
         this.literal = literal;
         this.line = line;
+        this.symbol = null;
+    }
+
+    Token(TokenType type, Symbol symbol, int line) {
+        this.type = type;
+        this.lexeme = symbol.name;
+        this.literal = null;
+        this.line = line;
+        this.symbol = symbol;
     }
 
     public String toString() {
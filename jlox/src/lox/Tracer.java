@@ -0,0 +1,123 @@
+package lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Records one structured event (node kind, line, result) per evaluated expression.
+ * Tracing is opt-in: the interpreter only calls into a tracer once one is installed,
+ * so the untraced path never builds strings or allocates records.
+ */
+class Tracer {
+    // Number of records kept by the ring buffer when none is given
+    static final int DEFAULT_CAPACITY = 1024;
+
+    // Ring buffer of the most recent records, used when there is no file sink
+    private final String[] kinds;
+    private final int[] lines;
+    private final Object[] results;
+
+    // Index of the next record to write and number of records currently buffered
+    private int next = 0;
+    private int size = 0;
+
+    // File sink that records are streamed to instead of being buffered
+    private final PrintWriter sink;
+
+    private Tracer(int capacity, PrintWriter sink) {
+        this.kinds = new String[capacity];
+        this.lines = new int[capacity];
+        this.results = new Object[capacity];
+        this.sink = sink;
+    }
+
+    /**
+     * Creates a tracer that keeps the most recent records in memory.
+     *
+     * @param capacity Maximum number of records retained
+     * @return The new tracer
+     */
+    static Tracer ring(int capacity) {
+        return new Tracer(capacity, null);
+    }
+
+    /**
+     * Creates a tracer that writes every record to a file.
+     *
+     * @param path Path of the trace file, truncated if it exists
+     * @return The new tracer
+     * @throws IOException If the file cannot be opened
+     */
+    static Tracer file(String path) throws IOException {
+        return new Tracer(0, new PrintWriter(
+                Files.newBufferedWriter(Paths.get(path), Charset.defaultCharset())));
+    }
+
+    /**
+     * Records the evaluation of an expression.
+     *
+     * @param expr The expression that was evaluated
+     * @param result The value it produced
+     */
+    void record(Expr expr, Object result) {
+        String kind = expr.getClass().getSimpleName();
+        int line = lineOf(expr);
+
+        if (sink != null) {
+            sink.println(format(kind, line, result));
+            return;
+        }
+
+        kinds[next] = kind;
+        lines[next] = line;
+        results[next] = result;
+        next = (next + 1) % kinds.length;
+        if (size < kinds.length) size++;
+    }
+
+    /**
+     * Writes out pending records: buffered records go to the given stream and are
+     * discarded, a file sink is flushed.
+     *
+     * @param out Stream that receives buffered records
+     */
+    void flush(PrintStream out) {
+        if (sink != null) {
+            sink.flush();
+            return;
+        }
+
+        int first = (next - size + kinds.length) % kinds.length;
+        for (int i = 0; i < size; i++) {
+            int index = (first + i) % kinds.length;
+            out.println(format(kinds[index], lines[index], results[index]));
+            results[index] = null;
+        }
+        size = 0;
+    }
+
+    private static String format(String kind, int line, Object result) {
+        return "[trace] " + kind + " line " + (line > 0 ? line : "-") +
+                " => " + Interpreter.stringify(result);
+    }
+
+    // Finds the source line of an expression from the token it carries, or 0 if it has none.
+    private static int lineOf(Expr expr) {
+        if (expr instanceof Expr.Binary) return ((Expr.Binary) expr).operator.line;
+        if (expr instanceof Expr.Unary) return ((Expr.Unary) expr).operator.line;
+        if (expr instanceof Expr.Logical) return ((Expr.Logical) expr).operator.line;
+        if (expr instanceof Expr.Variable) return ((Expr.Variable) expr).name.line;
+        if (expr instanceof Expr.Assign) return ((Expr.Assign) expr).name.line;
+        if (expr instanceof Expr.Call) return ((Expr.Call) expr).paren.line;
+        if (expr instanceof Expr.Get) return ((Expr.Get) expr).name.line;
+        if (expr instanceof Expr.Set) return ((Expr.Set) expr).name.line;
+        if (expr instanceof Expr.This) return ((Expr.This) expr).keyword.line;
+        if (expr instanceof Expr.Super) return ((Expr.Super) expr).keyword.line;
+        if (expr instanceof Expr.Grouping) return lineOf(((Expr.Grouping) expr).expression);
+        return 0;
+    }
+}
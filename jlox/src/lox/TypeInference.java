@@ -0,0 +1,392 @@
+package lox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Stack;
+
+/**
+ * Finds the expressions that always yield a number or a boolean, so that execution
+ * engines can compute them unboxed and without type checks.
+ * Runs after the Resolver. A local has the join of the types of every value assigned
+ * to it. A function whose name is only ever called directly, never read as a value
+ * or reassigned, does not escape: its parameters take the types of the arguments at
+ * its call sites and a call to it has the type of the values it returns. Globals are
+ * left dynamic, since code anywhere can assign them.
+ * The analysis ignores control flow. It starts from the optimistic assumption that no
+ * value reaches any variable and walks the program until no type changes, marking
+ * the number and bool flags of each expression on the way.
+ */
+class TypeInference implements Expr.Visitor<TypeInference.Type>, Stmt.Visitor<Void> {
+    enum Type {
+        // No value has been seen yet
+        NONE,
+        NUMBER,
+        BOOLEAN,
+        DYNAMIC;
+
+        Type join(Type other) {
+            if (this == other || other == NONE) return this;
+            if (this == NONE) return other;
+            return DYNAMIC;
+        }
+    }
+
+    // A local variable, or a function whose calls can be followed
+    private static class Variable {
+        Type type = Type.NONE;
+        // The declaration of a function variable, null for other variables
+        final Stmt.Function function;
+        final List<Variable> params = new ArrayList<>();
+        // Join of the values the function returns
+        Type returns = Type.NONE;
+        boolean escapes = false;
+
+        Variable(Stmt.Function function) {
+            this.function = function;
+        }
+    }
+
+    // Whether the program is complete, so no code outside it can call its global functions
+    private final boolean wholeProgram;
+    // Variables by the token that declares them, kept from one pass over the program to the next
+    private final Map<Token, Variable> variables = new IdentityHashMap<>();
+    private final Map<String, Variable> globalFunctions = new HashMap<>();
+    private final Stack<Map<String, Variable>> scopes = new Stack<>();
+    // The function whose return statements are being visited, null if its calls are not followed
+    private Variable function = null;
+    private boolean changed;
+
+    /**
+     * @param wholeProgram Whether the statements are the whole program. Code entered
+     *                     later at the prompt can call global functions with any
+     *                     arguments, so their calls are only followed for scripts.
+     */
+    TypeInference(boolean wholeProgram) {
+        this.wholeProgram = wholeProgram;
+    }
+
+    void infer(List<Stmt> statements) {
+        if (wholeProgram) findGlobalFunctions(statements);
+
+        do {
+            changed = false;
+            for (Stmt statement : statements) {
+                statement.accept(this);
+            }
+        } while (changed);
+    }
+
+    // Global functions can be followed if nothing else at the top level takes their name.
+    private void findGlobalFunctions(List<Stmt> statements) {
+        Map<String, Integer> declarations = new HashMap<>();
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Declaration) {
+                declarations.merge(((Stmt.Declaration) statement).name.lexeme, 1, Integer::sum);
+            }
+        }
+
+        for (Stmt statement : statements) {
+            if (!(statement instanceof Stmt.Function)) continue;
+
+            Stmt.Function function = (Stmt.Function) statement;
+            if (declarations.get(function.name.lexeme) == 1) {
+                globalFunctions.put(function.name.lexeme, variable(function.name, function));
+            }
+        }
+    }
+
+    private Variable variable(Token name, Stmt.Function function) {
+        Variable variable = variables.get(name);
+        if (variable != null) return variable;
+
+        variable = new Variable(function);
+        variables.put(name, variable);
+        // Calls can be visited before the declaration, so the parameters exist up front.
+        if (function != null) {
+            for (Token param : function.params) {
+                variable.params.add(variable(param, null));
+            }
+        }
+        return variable;
+    }
+
+    private Variable declare(Token name, Stmt.Function function) {
+        if (scopes.isEmpty()) return globalFunctions.get(name.lexeme);
+
+        Variable variable = variable(name, function);
+        scopes.peek().put(name.lexeme, variable);
+        return variable;
+    }
+
+    private Variable lookUp(Token name) {
+        for (int i = scopes.size() - 1; i >= 0; i--) {
+            Variable variable = scopes.get(i).get(name.lexeme);
+            if (variable != null) return variable;
+        }
+        return globalFunctions.get(name.lexeme);
+    }
+
+    private void assign(Variable variable, Type type) {
+        if (variable == null || variable.function != null) return;
+
+        Type joined = variable.type.join(type);
+        if (joined != variable.type) {
+            variable.type = joined;
+            changed = true;
+        }
+    }
+
+    // A function used other than by calling it can be called from anywhere with anything.
+    private void escape(Variable variable) {
+        if (variable == null || variable.function == null || variable.escapes) return;
+
+        variable.escapes = true;
+        variable.returns = Type.DYNAMIC;
+        for (Variable param : variable.params) {
+            assign(param, Type.DYNAMIC);
+        }
+        changed = true;
+    }
+
+    private Type mark(Expr expr, Type type) {
+        expr.number = type == Type.NUMBER;
+        expr.bool = type == Type.BOOLEAN;
+        return type;
+    }
+
+    private Type infer(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private void infer(List<Stmt> statements, boolean scope) {
+        if (scope) scopes.push(new HashMap<>());
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        if (scope) scopes.pop();
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        infer(stmt.statements, true);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        assign(declare(stmt.name, null), Type.DYNAMIC);
+        if (stmt.superclass != null) infer(stmt.superclass);
+
+        // Methods are called through dynamic dispatch, so nothing is known of their arguments.
+        for (Stmt.Function method : stmt.methods) {
+            function(method, null);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        Variable variable = declare(stmt.name, stmt);
+        function(stmt, variable);
+        return null;
+    }
+
+    // Infers a function body; the variable is null when the function's calls are not followed
+    private void function(Stmt.Function declaration, Variable variable) {
+        Variable enclosing = function;
+        function = variable;
+
+        scopes.push(new HashMap<>());
+        for (Token name : declaration.params) {
+            Variable param = variable(name, null);
+            scopes.peek().put(name.lexeme, param);
+            if (variable == null) assign(param, Type.DYNAMIC);
+        }
+        infer(declaration.body, false);
+        scopes.pop();
+
+        // Falling off the end of the body returns nil.
+        if (variable != null && !alwaysReturns(declaration.body)) returns(variable, Type.DYNAMIC);
+
+        function = enclosing;
+    }
+
+    private void returns(Variable function, Type type) {
+        Type joined = function.returns.join(type);
+        if (joined != function.returns) {
+            function.returns = joined;
+            changed = true;
+        }
+    }
+
+    private static boolean alwaysReturns(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (alwaysReturns(statement)) return true;
+        }
+        return false;
+    }
+
+    private static boolean alwaysReturns(Stmt stmt) {
+        if (stmt instanceof Stmt.Return) return true;
+        if (stmt instanceof Stmt.Block) return alwaysReturns(((Stmt.Block) stmt).statements);
+        if (stmt instanceof Stmt.If) {
+            Stmt.If ifStmt = (Stmt.If) stmt;
+            return ifStmt.elseBranch != null
+                    && alwaysReturns(ifStmt.thenBranch) && alwaysReturns(ifStmt.elseBranch);
+        }
+        return false;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        infer(stmt.condition);
+        stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        Type type = stmt.value == null ? Type.DYNAMIC : infer(stmt.value);
+        if (function != null) returns(function, type);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Variable variable = scopes.isEmpty() ? null : declare(stmt.name, null);
+        Type type = stmt.initializer == null ? Type.DYNAMIC : infer(stmt.initializer);
+        assign(variable, type);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        infer(stmt.condition);
+        stmt.body.accept(this);
+        return null;
+    }
+
+    @Override
+    public Type visitAssignExpr(Expr.Assign expr) {
+        Type type = infer(expr.value);
+        Variable variable = lookUp(expr.name);
+        escape(variable);
+        assign(variable, type);
+        return mark(expr, type);
+    }
+
+    @Override
+    public Type visitBinaryExpr(Expr.Binary expr) {
+        Type left = infer(expr.left);
+        Type right = infer(expr.right);
+
+        switch (expr.operator.type) {
+            case MINUS:
+            case STAR:
+            case SLASH:
+                // These fail unless both operands are numbers.
+                return mark(expr, Type.NUMBER);
+            case PLUS:
+                if (left == Type.NONE || right == Type.NONE) return mark(expr, Type.NONE);
+                if (left == Type.NUMBER && right == Type.NUMBER) return mark(expr, Type.NUMBER);
+                return mark(expr, Type.DYNAMIC);
+            default:
+                return mark(expr, Type.BOOLEAN);
+        }
+    }
+
+    @Override
+    public Type visitCallExpr(Expr.Call expr) {
+        Variable callee = expr.callee instanceof Expr.Variable
+                ? lookUp(((Expr.Variable) expr.callee).name)
+                : null;
+        if (callee == null || callee.function == null || callee.escapes
+                || callee.params.size() != expr.arguments.size()) {
+            // A call with the wrong number of arguments fails before the function runs.
+            infer(expr.callee);
+            for (Expr argument : expr.arguments) {
+                infer(argument);
+            }
+            return mark(expr, Type.DYNAMIC);
+        }
+
+        mark(expr.callee, Type.DYNAMIC);
+        for (int i = 0; i < expr.arguments.size(); i++) {
+            assign(callee.params.get(i), infer(expr.arguments.get(i)));
+        }
+        return mark(expr, callee.returns);
+    }
+
+    @Override
+    public Type visitGetExpr(Expr.Get expr) {
+        infer(expr.object);
+        return mark(expr, Type.DYNAMIC);
+    }
+
+    @Override
+    public Type visitGroupingExpr(Expr.Grouping expr) {
+        return mark(expr, infer(expr.expression));
+    }
+
+    @Override
+    public Type visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value instanceof Double) return mark(expr, Type.NUMBER);
+        if (expr.value instanceof Boolean) return mark(expr, Type.BOOLEAN);
+        return mark(expr, Type.DYNAMIC);
+    }
+
+    @Override
+    public Type visitLogicalExpr(Expr.Logical expr) {
+        // The result is one of the operands.
+        Type left = infer(expr.left);
+        return mark(expr, left.join(infer(expr.right)));
+    }
+
+    @Override
+    public Type visitSetExpr(Expr.Set expr) {
+        infer(expr.object);
+        return mark(expr, infer(expr.value));
+    }
+
+    @Override
+    public Type visitSuperExpr(Expr.Super expr) {
+        return mark(expr, Type.DYNAMIC);
+    }
+
+    @Override
+    public Type visitThisExpr(Expr.This expr) {
+        return mark(expr, Type.DYNAMIC);
+    }
+
+    @Override
+    public Type visitUnaryExpr(Expr.Unary expr) {
+        infer(expr.right);
+        return mark(expr, expr.operator.type == TokenType.MINUS ? Type.NUMBER : Type.BOOLEAN);
+    }
+
+    @Override
+    public Type visitVariableExpr(Expr.Variable expr) {
+        Variable variable = lookUp(expr.name);
+        if (variable == null) return mark(expr, Type.DYNAMIC);
+
+        escape(variable);
+        if (variable.function != null) return mark(expr, Type.DYNAMIC);
+        return mark(expr, variable.type);
+    }
+}
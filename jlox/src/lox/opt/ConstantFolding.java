@@ -0,0 +1,91 @@
+package lox.opt;
+
+import java.util.Objects;
+
+import lox.Expr;
+import lox.Interpreter;
+import lox.TokenType;
+
+/**
+ * Computes operations whose operands are literals once, ahead of execution.
+ * Arithmetic, comparisons, equality, string concatenation, negation and not are
+ * replaced by their result, parentheses around a literal are dropped, and a logical
+ * operator whose left operand is a literal becomes the operand it would yield.
+ * An operation that would fail at run time, such as a division by zero or adding a
+ * number to a string, is left in place to fail there, with its own line.
+ */
+final class ConstantFolding extends Rewriter {
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        super.visitBinaryExpr(expr);
+        if (!(expr.left instanceof Expr.Literal) || !(expr.right instanceof Expr.Literal)) return expr;
+
+        Object value = fold(expr.operator.type,
+                ((Expr.Literal) expr.left).value, ((Expr.Literal) expr.right).value);
+        return value == null ? expr : new Expr.Literal(value);
+    }
+
+    /**
+     * @return The result of the operation, or null if it raises an error. No binary
+     *         operator yields nil, so null is free to mean that.
+     */
+    private static Object fold(TokenType operator, Object left, Object right) {
+        switch (operator) {
+            case EQUAL_EQUAL:
+                return Objects.equals(left, right);
+            case BANG_EQUAL:
+                return !Objects.equals(left, right);
+            case PLUS:
+                if (left instanceof String && right instanceof String) {
+                    return (String) left + (String) right;
+                }
+                break;
+            default:
+                break;
+        }
+
+        if (!(left instanceof Double) || !(right instanceof Double)) return null;
+
+        double a = (double) left;
+        double b = (double) right;
+        switch (operator) {
+            case PLUS: return a + b;
+            case MINUS: return a - b;
+            case STAR: return a * b;
+            case SLASH: return b == 0.0 ? null : a / b;
+            case GREATER: return a > b;
+            case GREATER_EQUAL: return a >= b;
+            case LESS: return a < b;
+            case LESS_EQUAL: return a <= b;
+            default: return null;
+        }
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        super.visitGroupingExpr(expr);
+        return expr.expression instanceof Expr.Literal ? expr.expression : expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        super.visitLogicalExpr(expr);
+        if (!(expr.left instanceof Expr.Literal)) return expr;
+
+        // 'or' yields a truthy left operand and 'and' a falsy one; otherwise the right.
+        boolean truthy = Interpreter.isTruthy(((Expr.Literal) expr.left).value);
+        boolean yieldsLeft = expr.operator.type == TokenType.OR ? truthy : !truthy;
+        return yieldsLeft ? expr.left : expr.right;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        super.visitUnaryExpr(expr);
+        if (!(expr.right instanceof Expr.Literal)) return expr;
+
+        Object value = ((Expr.Literal) expr.right).value;
+        if (expr.operator.type == TokenType.BANG) return new Expr.Literal(!Interpreter.isTruthy(value));
+        if (value instanceof Double) return new Expr.Literal(-(double) value);
+        return expr;
+    }
+}
@@ -0,0 +1,34 @@
+package lox.opt;
+
+import lox.Expr;
+import lox.Interpreter;
+import lox.Stmt;
+
+/**
+ * Removes the code that literal conditions make unreachable.
+ * An if statement with a literal condition becomes the branch it takes, or goes
+ * away when that branch is a missing else, and a loop whose condition is a falsy
+ * literal goes away. Runs after ConstantFolding, which turns constant conditions
+ * into literals.
+ */
+final class DeadCodeElimination extends Rewriter {
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        super.visitIfStmt(stmt);
+        if (!(stmt.condition instanceof Expr.Literal)) return stmt;
+
+        // A branch is a statement rather than a declaration, so it adds no names to
+        // the enclosing scope when it takes the place of the if.
+        return Interpreter.isTruthy(((Expr.Literal) stmt.condition).value)
+                ? stmt.thenBranch
+                : stmt.elseBranch;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        super.visitWhileStmt(stmt);
+        if (!(stmt.condition instanceof Expr.Literal)) return stmt;
+
+        return Interpreter.isTruthy(((Expr.Literal) stmt.condition).value) ? stmt : null;
+    }
+}
@@ -0,0 +1,15 @@
+package lox.opt;
+
+import java.util.List;
+
+import lox.Stmt;
+
+/**
+ * A transformation of a program that the Resolver has already resolved.
+ * Passes rewrite the tree in place. A node is only ever replaced by a literal or by
+ * a node that was already in the tree, so the Resolver's slots and depths stay valid,
+ * and every node that can raise a runtime error keeps its token and line.
+ */
+public interface Pass {
+    void run(List<Stmt> statements);
+}
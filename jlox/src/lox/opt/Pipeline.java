@@ -0,0 +1,34 @@
+package lox.opt;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import lox.Stmt;
+
+/**
+ * The passes run over a program between resolution and execution, in order.
+ */
+public final class Pipeline {
+    private final List<Pass> passes = new ArrayList<>();
+
+    /**
+     * @return The passes run by default: constant folding, then dead code elimination
+     *         of the branches and loops that folding decided
+     */
+    public static Pipeline standard() {
+        return new Pipeline()
+                .add(new ConstantFolding())
+                .add(new DeadCodeElimination());
+    }
+
+    public Pipeline add(Pass pass) {
+        passes.add(pass);
+        return this;
+    }
+
+    public void run(List<Stmt> statements) {
+        for (Pass pass : passes) {
+            pass.run(statements);
+        }
+    }
+}
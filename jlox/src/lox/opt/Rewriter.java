@@ -0,0 +1,173 @@
+package lox.opt;
+
+import java.util.List;
+import java.util.ListIterator;
+
+import lox.Expr;
+import lox.Stmt;
+
+/**
+ * Walks the whole tree, replacing each child with what visiting it returns.
+ * Visiting a node returns the node itself unless a subclass overrides the visit;
+ * overrides call the default first, so children are rewritten before their parent.
+ * A statement visit can return null to delete the statement from its list.
+ */
+abstract class Rewriter implements Pass, Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    @Override
+    public void run(List<Stmt> statements) {
+        rewrite(statements);
+    }
+
+    void rewrite(List<Stmt> statements) {
+        ListIterator<Stmt> iterator = statements.listIterator();
+        while (iterator.hasNext()) {
+            Stmt statement = iterator.next().accept(this);
+            if (statement == null) {
+                iterator.remove();
+            } else {
+                iterator.set(statement);
+            }
+        }
+    }
+
+    // Rewrites a statement that is not in a list, and so cannot be deleted
+    Stmt rewrite(Stmt stmt) {
+        Stmt statement = stmt.accept(this);
+        return statement == null ? stmt : statement;
+    }
+
+    Expr rewrite(Expr expr) {
+        return expr.accept(this);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        rewrite(stmt.statements);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        for (Stmt.Function method : stmt.methods) {
+            rewrite(method.body);
+        }
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression = rewrite(stmt.expression);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        rewrite(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        stmt.condition = rewrite(stmt.condition);
+        stmt.thenBranch = rewrite(stmt.thenBranch);
+        if (stmt.elseBranch != null) stmt.elseBranch = rewrite(stmt.elseBranch);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression = rewrite(stmt.expression);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value != null) stmt.value = rewrite(stmt.value);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer != null) stmt.initializer = rewrite(stmt.initializer);
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        stmt.condition = rewrite(stmt.condition);
+        stmt.body = rewrite(stmt.body);
+        return stmt;
+    }
+
+    @Override
+    public Expr visitAssignExpr(Expr.Assign expr) {
+        expr.value = rewrite(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        expr.left = rewrite(expr.left);
+        expr.right = rewrite(expr.right);
+        return expr;
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        expr.callee = rewrite(expr.callee);
+        expr.arguments.replaceAll(this::rewrite);
+        return expr;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        expr.object = rewrite(expr.object);
+        return expr;
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression = rewrite(expr.expression);
+        return expr;
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        expr.left = rewrite(expr.left);
+        expr.right = rewrite(expr.right);
+        return expr;
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        expr.object = rewrite(expr.object);
+        expr.value = rewrite(expr.value);
+        return expr;
+    }
+
+    @Override
+    public Expr visitSuperExpr(Expr.Super expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        expr.right = rewrite(expr.right);
+        return expr;
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+}
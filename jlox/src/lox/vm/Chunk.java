@@ -0,0 +1,49 @@
+package lox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A compiled sequence of bytecode: the instructions, the constants they refer to
+ * and the source line of every byte for error reporting.
+ */
+final class Chunk {
+    byte[] code = new byte[16];
+    int[] lines = new int[16];
+    int count = 0;
+
+    Object[] constants = new Object[8];
+    int constantCount = 0;
+
+    // Index of every constant already in the pool, so equal constants are shared
+    private final Map<Object, Integer> constantIndices = new HashMap<>();
+
+    void write(int b, int line) {
+        if (count == code.length) {
+            code = Arrays.copyOf(code, count * 2);
+            lines = Arrays.copyOf(lines, count * 2);
+        }
+        code[count] = (byte) b;
+        lines[count] = line;
+        count++;
+    }
+
+    /**
+     * Adds a value to the constant pool unless an equal one is already there.
+     *
+     * @param value A number, string, function or global
+     * @return The index of the constant
+     */
+    int addConstant(Object value) {
+        Integer index = constantIndices.get(value);
+        if (index != null) return index;
+
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        constantIndices.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,609 @@
+package lox.vm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import lox.Expr;
+import lox.Lox;
+import lox.Stmt;
+import lox.Token;
+import lox.TokenType;
+
+/**
+ * Compiles resolved statements into bytecode for the VM.
+ * Follows the single-pass compiler of clox, except that it walks the AST the
+ * parser already built: locals live in stack slots, variables of enclosing
+ * functions are reached through upvalues, and everything else is a global.
+ */
+final class Compiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_SLOTS = 256;
+    private static final int MAX_SHORT = 0xffff;
+
+    private enum FunctionType {
+        FUNCTION,
+        INITIALIZER,
+        METHOD,
+        SCRIPT
+    }
+
+    // A local variable; depth is -1 until its initializer has been compiled
+    private static final class Local {
+        final String name;
+        int depth;
+        boolean isCaptured = false;
+
+        Local(String name, int depth) {
+            this.name = name;
+            this.depth = depth;
+        }
+    }
+
+    private static final class Upvalue {
+        final int index;
+        final boolean isLocal;
+
+        Upvalue(int index, boolean isLocal) {
+            this.index = index;
+            this.isLocal = isLocal;
+        }
+    }
+
+    // State of the function currently being compiled
+    private static final class FunctionState {
+        final FunctionState enclosing;
+        final ObjFunction function;
+        final FunctionType type;
+        final List<Local> locals = new ArrayList<>();
+        final List<Upvalue> upvalues = new ArrayList<>();
+        int scopeDepth = 0;
+
+        FunctionState(FunctionState enclosing, ObjFunction function, FunctionType type) {
+            this.enclosing = enclosing;
+            this.function = function;
+            this.type = type;
+
+            // Slot zero holds the receiver in methods and the called closure otherwise.
+            boolean hasReceiver = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            locals.add(new Local(hasReceiver ? "this" : "", 0));
+        }
+    }
+
+    // Global variables of the VM, shared by every program it runs
+    private final Map<String, ObjGlobal> globals;
+    private FunctionState current = null;
+    // Source line attached to emitted instructions
+    private int line = 1;
+    private boolean hadError = false;
+
+    Compiler(Map<String, ObjGlobal> globals) {
+        this.globals = globals;
+    }
+
+    /**
+     * Compiles a program into the function that runs its top-level code.
+     *
+     * @param statements The resolved top-level statements
+     * @return The script function, or null if the program exceeds a VM limit
+     */
+    ObjFunction compile(List<Stmt> statements) {
+        current = new FunctionState(null, new ObjFunction(null), FunctionType.SCRIPT);
+        for (Stmt statement : statements) {
+            statement.accept(this);
+        }
+        ObjFunction function = endFunction();
+        return hadError ? null : function;
+    }
+
+    private Chunk chunk() {
+        return current.function.chunk;
+    }
+
+    private void error(Token token, String message) {
+        if (token == null) {
+            Lox.error(line, message);
+        } else {
+            Lox.error(token, message);
+        }
+        hadError = true;
+    }
+
+    private void emitByte(int b) {
+        chunk().write(b, line);
+    }
+
+    private void emitBytes(int first, int second) {
+        emitByte(first);
+        emitByte(second);
+    }
+
+    private void emitShort(int value) {
+        emitByte((value >> 8) & 0xff);
+        emitByte(value & 0xff);
+    }
+
+    private void emitWithConstant(byte op, int constant) {
+        emitByte(op);
+        emitShort(constant);
+    }
+
+    private int makeConstant(Token token, Object value) {
+        int constant = chunk().addConstant(value);
+        if (constant > MAX_SHORT) {
+            error(token, "Too many constants in one chunk.");
+            return 0;
+        }
+        return constant;
+    }
+
+    private int identifierConstant(Token name) {
+        return makeConstant(name, name.lexeme);
+    }
+
+    private int globalConstant(Token name, String lexeme) {
+        ObjGlobal global = globals.computeIfAbsent(lexeme, ObjGlobal::new);
+        return makeConstant(name, global);
+    }
+
+    private int emitJump(byte instruction) {
+        emitByte(instruction);
+        emitShort(MAX_SHORT);
+        return chunk().count - 2;
+    }
+
+    private void patchJump(Token near, int offset) {
+        // -2 to adjust for the jump offset itself.
+        int jump = chunk().count - offset - 2;
+        if (jump > MAX_SHORT) {
+            error(near, "Too much code to jump over.");
+        }
+
+        chunk().code[offset] = (byte) ((jump >> 8) & 0xff);
+        chunk().code[offset + 1] = (byte) (jump & 0xff);
+    }
+
+    private void emitLoop(Token near, int loopStart) {
+        emitByte(OpCode.LOOP);
+
+        int offset = chunk().count - loopStart + 2;
+        if (offset > MAX_SHORT) error(near, "Loop body too large.");
+
+        emitShort(offset);
+    }
+
+    private void emitReturn() {
+        if (current.type == FunctionType.INITIALIZER) {
+            emitBytes(OpCode.GET_LOCAL, 0);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+        emitByte(OpCode.RETURN);
+    }
+
+    private ObjFunction endFunction() {
+        emitReturn();
+        ObjFunction function = current.function;
+        function.upvalueCount = current.upvalues.size();
+        return function;
+    }
+
+    private void beginScope() {
+        current.scopeDepth++;
+    }
+
+    private void endScope() {
+        current.scopeDepth--;
+
+        List<Local> locals = current.locals;
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).depth > current.scopeDepth) {
+            if (locals.get(locals.size() - 1).isCaptured) {
+                emitByte(OpCode.CLOSE_UPVALUE);
+            } else {
+                emitByte(OpCode.POP);
+            }
+            locals.remove(locals.size() - 1);
+        }
+    }
+
+    private void addLocal(Token name, String lexeme) {
+        if (current.locals.size() == MAX_SLOTS) {
+            error(name, "Too many local variables in function.");
+            return;
+        }
+        current.locals.add(new Local(lexeme, -1));
+    }
+
+    private void declareVariable(Token name) {
+        if (current.scopeDepth == 0) return;
+        addLocal(name, name.lexeme);
+    }
+
+    private void markInitialized() {
+        if (current.scopeDepth == 0) return;
+        current.locals.get(current.locals.size() - 1).depth = current.scopeDepth;
+    }
+
+    // Binds a declared variable to the value on top of the stack
+    private void defineVariable(Token name) {
+        if (current.scopeDepth > 0) {
+            markInitialized();
+            return;
+        }
+        emitWithConstant(OpCode.DEFINE_GLOBAL, globalConstant(name, name.lexeme));
+    }
+
+    private static int resolveLocal(FunctionState state, String name) {
+        for (int i = state.locals.size() - 1; i >= 0; i--) {
+            if (state.locals.get(i).name.equals(name)) return i;
+        }
+        return -1;
+    }
+
+    private int addUpvalue(Token near, FunctionState state, int index, boolean isLocal) {
+        for (int i = 0; i < state.upvalues.size(); i++) {
+            Upvalue upvalue = state.upvalues.get(i);
+            if (upvalue.index == index && upvalue.isLocal == isLocal) return i;
+        }
+
+        if (state.upvalues.size() == MAX_SLOTS) {
+            error(near, "Too many closure variables in function.");
+            return 0;
+        }
+
+        state.upvalues.add(new Upvalue(index, isLocal));
+        return state.upvalues.size() - 1;
+    }
+
+    private int resolveUpvalue(Token near, FunctionState state, String name) {
+        if (state.enclosing == null) return -1;
+
+        int local = resolveLocal(state.enclosing, name);
+        if (local != -1) {
+            state.enclosing.locals.get(local).isCaptured = true;
+            return addUpvalue(near, state, local, true);
+        }
+
+        int upvalue = resolveUpvalue(near, state.enclosing, name);
+        if (upvalue != -1) {
+            return addUpvalue(near, state, upvalue, false);
+        }
+
+        return -1;
+    }
+
+    private void namedVariable(Token name, String lexeme, boolean assign) {
+        line = name.line;
+
+        int arg = resolveLocal(current, lexeme);
+        if (arg != -1) {
+            emitBytes(assign ? OpCode.SET_LOCAL : OpCode.GET_LOCAL, arg);
+            return;
+        }
+
+        arg = resolveUpvalue(name, current, lexeme);
+        if (arg != -1) {
+            emitBytes(assign ? OpCode.SET_UPVALUE : OpCode.GET_UPVALUE, arg);
+            return;
+        }
+
+        emitWithConstant(assign ? OpCode.SET_GLOBAL : OpCode.GET_GLOBAL,
+                globalConstant(name, lexeme));
+    }
+
+    private void function(Stmt.Function stmt, FunctionType type) {
+        current = new FunctionState(current, new ObjFunction(stmt.name.lexeme), type);
+        beginScope();
+
+        current.function.arity = stmt.params.size();
+        for (Token param : stmt.params) {
+            declareVariable(param);
+            markInitialized();
+        }
+        for (Stmt statement : stmt.body) {
+            statement.accept(this);
+        }
+
+        FunctionState state = current;
+        ObjFunction function = endFunction();
+        current = state.enclosing;
+
+        line = stmt.name.line;
+        emitWithConstant(OpCode.CLOSURE, makeConstant(stmt.name, function));
+        for (Upvalue upvalue : state.upvalues) {
+            emitByte(upvalue.isLocal ? 1 : 0);
+            emitByte(upvalue.index);
+        }
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        stmt.expression.accept(this);
+        emitByte(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        stmt.expression.accept(this);
+        emitByte(OpCode.PRINT);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        declareVariable(stmt.name);
+
+        if (stmt.initializer != null) {
+            stmt.initializer.accept(this);
+        } else {
+            emitByte(OpCode.NIL);
+        }
+
+        line = stmt.name.line;
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        beginScope();
+        for (Stmt statement : stmt.statements) {
+            statement.accept(this);
+        }
+        endScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        stmt.condition.accept(this);
+
+        int thenJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitByte(OpCode.POP);
+        stmt.thenBranch.accept(this);
+
+        int elseJump = emitJump(OpCode.JUMP);
+        patchJump(null, thenJump);
+        emitByte(OpCode.POP);
+
+        if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+        patchJump(null, elseJump);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        int loopStart = chunk().count;
+        stmt.condition.accept(this);
+
+        int exitJump = emitJump(OpCode.JUMP_IF_FALSE);
+        emitByte(OpCode.POP);
+        stmt.body.accept(this);
+        emitLoop(null, loopStart);
+
+        patchJump(null, exitJump);
+        emitByte(OpCode.POP);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        declareVariable(stmt.name);
+        // A local function can refer to itself, so it is usable before its body is compiled.
+        markInitialized();
+        function(stmt, FunctionType.FUNCTION);
+        defineVariable(stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        line = stmt.keyword.line;
+        if (stmt.value == null) {
+            emitReturn();
+        } else {
+            stmt.value.accept(this);
+            emitByte(OpCode.RETURN);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        Token className = stmt.name;
+        line = className.line;
+        int nameConstant = identifierConstant(className);
+        declareVariable(className);
+
+        emitWithConstant(OpCode.CLASS, nameConstant);
+        defineVariable(className);
+
+        if (stmt.superclass != null) {
+            stmt.superclass.accept(this);
+
+            beginScope();
+            addLocal(stmt.superclass.name, "super");
+            markInitialized();
+
+            namedVariable(className, className.lexeme, false);
+            line = stmt.superclass.name.line;
+            emitByte(OpCode.INHERIT);
+        }
+
+        namedVariable(className, className.lexeme, false);
+        for (Stmt.Function method : stmt.methods) {
+            FunctionType type = method.name.lexeme.equals("init")
+                    ? FunctionType.INITIALIZER
+                    : FunctionType.METHOD;
+            function(method, type);
+            emitWithConstant(OpCode.METHOD, identifierConstant(method.name));
+        }
+        emitByte(OpCode.POP);
+
+        if (stmt.superclass != null) {
+            endScope();
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        expr.value.accept(this);
+        namedVariable(expr.name, expr.name.lexeme, true);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        expr.left.accept(this);
+        expr.right.accept(this);
+
+        line = expr.operator.line;
+        switch (expr.operator.type) {
+            case BANG_EQUAL: emitBytes(OpCode.EQUAL, OpCode.NOT); break;
+            case EQUAL_EQUAL: emitByte(OpCode.EQUAL); break;
+            case GREATER: emitByte(OpCode.GREATER); break;
+            case GREATER_EQUAL: emitByte(OpCode.GREATER_EQUAL); break;
+            case LESS: emitByte(OpCode.LESS); break;
+            case LESS_EQUAL: emitByte(OpCode.LESS_EQUAL); break;
+            case PLUS: emitByte(OpCode.ADD); break;
+            case MINUS: emitByte(OpCode.SUBTRACT); break;
+            case STAR: emitByte(OpCode.MULTIPLY); break;
+            case SLASH: emitByte(OpCode.DIVIDE); break;
+            default: break;
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        expr.expression.accept(this);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emitByte(OpCode.NIL);
+        } else if (expr.value.equals(Boolean.TRUE)) {
+            emitByte(OpCode.TRUE);
+        } else if (expr.value.equals(Boolean.FALSE)) {
+            emitByte(OpCode.FALSE);
+        } else {
+            emitWithConstant(OpCode.CONSTANT, makeConstant(null, expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        expr.right.accept(this);
+
+        line = expr.operator.line;
+        if (expr.operator.type == TokenType.MINUS) {
+            emitByte(OpCode.NEGATE);
+        } else {
+            emitByte(OpCode.NOT);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        namedVariable(expr.name, expr.name.lexeme, false);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        expr.left.accept(this);
+
+        if (expr.operator.type == TokenType.OR) {
+            int elseJump = emitJump(OpCode.JUMP_IF_FALSE);
+            int endJump = emitJump(OpCode.JUMP);
+
+            patchJump(expr.operator, elseJump);
+            emitByte(OpCode.POP);
+
+            expr.right.accept(this);
+            patchJump(expr.operator, endJump);
+        } else {
+            int endJump = emitJump(OpCode.JUMP_IF_FALSE);
+
+            emitByte(OpCode.POP);
+            expr.right.accept(this);
+
+            patchJump(expr.operator, endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get) {
+            // Calling a property directly invokes the method without creating a bound method.
+            Expr.Get get = (Expr.Get) expr.callee;
+            get.object.accept(this);
+            compileArguments(expr.arguments);
+            line = expr.paren.line;
+            emitWithConstant(OpCode.INVOKE, identifierConstant(get.name));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+
+        if (expr.callee instanceof Expr.Super) {
+            Expr.Super superExpr = (Expr.Super) expr.callee;
+            namedVariable(superExpr.keyword, "this", false);
+            compileArguments(expr.arguments);
+            namedVariable(superExpr.keyword, "super", false);
+            line = expr.paren.line;
+            emitWithConstant(OpCode.SUPER_INVOKE, identifierConstant(superExpr.method));
+            emitByte(expr.arguments.size());
+            return null;
+        }
+
+        expr.callee.accept(this);
+        compileArguments(expr.arguments);
+        line = expr.paren.line;
+        emitBytes(OpCode.CALL, expr.arguments.size());
+        return null;
+    }
+
+    private void compileArguments(List<Expr> arguments) {
+        for (Expr argument : arguments) {
+            argument.accept(this);
+        }
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        expr.object.accept(this);
+        line = expr.name.line;
+        emitWithConstant(OpCode.GET_PROPERTY, identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        expr.object.accept(this);
+        expr.value.accept(this);
+        line = expr.name.line;
+        emitWithConstant(OpCode.SET_PROPERTY, identifierConstant(expr.name));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        namedVariable(expr.keyword, "this", false);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        namedVariable(expr.keyword, "this", false);
+        namedVariable(expr.keyword, "super", false);
+        line = expr.method.line;
+        emitWithConstant(OpCode.GET_SUPER, identifierConstant(expr.method));
+        return null;
+    }
+}
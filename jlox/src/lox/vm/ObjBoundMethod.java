@@ -0,0 +1,19 @@
+package lox.vm;
+
+/**
+ * A method closure paired with the receiver it was accessed on.
+ */
+final class ObjBoundMethod {
+    final Object receiver;
+    final ObjClosure method;
+
+    ObjBoundMethod(Object receiver, ObjClosure method) {
+        this.receiver = receiver;
+        this.method = method;
+    }
+
+    @Override
+    public String toString() {
+        return method.toString();
+    }
+}
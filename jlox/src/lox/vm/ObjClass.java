@@ -0,0 +1,22 @@
+package lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A class at run time. Inherited methods are copied down into the subclass's
+ * table when it is defined, so lookups never walk the superclass chain.
+ */
+final class ObjClass {
+    final String name;
+    final Map<String, ObjClosure> methods = new HashMap<>();
+
+    ObjClass(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,19 @@
+package lox.vm;
+
+/**
+ * A function together with the upvalues it captured when it was created.
+ */
+final class ObjClosure {
+    final ObjFunction function;
+    final ObjUpvalue[] upvalues;
+
+    ObjClosure(ObjFunction function) {
+        this.function = function;
+        this.upvalues = new ObjUpvalue[function.upvalueCount];
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package lox.vm;
+
+/**
+ * A compiled function: its bytecode and what the VM needs to call it.
+ */
+final class ObjFunction {
+    final String name;
+    final Chunk chunk = new Chunk();
+    int arity = 0;
+    int upvalueCount = 0;
+
+    ObjFunction(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String toString() {
+        if (name == null) return "<script>";
+        return "<fn " + name + ">";
+    }
+}
@@ -0,0 +1,17 @@
+package lox.vm;
+
+/**
+ * Storage for one global variable.
+ * The compiler puts the global itself in the constant pool instead of its name,
+ * so reading or writing a global never hashes the name at run time.
+ */
+final class ObjGlobal {
+    final String name;
+    Object value = null;
+    // Whether a declaration has run; a name can be referenced before it is defined
+    boolean defined = false;
+
+    ObjGlobal(String name) {
+        this.name = name;
+    }
+}
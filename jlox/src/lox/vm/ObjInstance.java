@@ -0,0 +1,21 @@
+package lox.vm;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * An instance of a class and its fields.
+ */
+final class ObjInstance {
+    final ObjClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+
+    ObjInstance(ObjClass klass) {
+        this.klass = klass;
+    }
+
+    @Override
+    public String toString() {
+        return klass.name + " instance";
+    }
+}
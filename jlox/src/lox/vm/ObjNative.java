@@ -0,0 +1,23 @@
+package lox.vm;
+
+/**
+ * A function implemented in Java.
+ */
+final class ObjNative {
+    interface NativeFn {
+        Object call(Object[] arguments);
+    }
+
+    final int arity;
+    final NativeFn function;
+
+    ObjNative(int arity, NativeFn function) {
+        this.arity = arity;
+        this.function = function;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
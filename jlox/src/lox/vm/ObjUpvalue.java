@@ -0,0 +1,18 @@
+package lox.vm;
+
+/**
+ * A variable captured by a closure.
+ * While the variable's frame is live the upvalue is open and points at its stack
+ * slot; when the frame returns or the scope ends it is closed and keeps the value.
+ */
+final class ObjUpvalue {
+    // Stack slot of an open upvalue, -1 once closed
+    int location;
+    Object closed = null;
+    // Next open upvalue, ordered by decreasing stack slot
+    ObjUpvalue next = null;
+
+    ObjUpvalue(int location) {
+        this.location = location;
+    }
+}
@@ -0,0 +1,593 @@
+package lox.vm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lox.Rope;
+import lox.Stmt;
+
+/**
+ * Stack-based virtual machine that executes bytecode produced by the Compiler.
+ * Values are kept on one operand stack shared by all call frames, and each frame
+ * addresses its locals relative to its base slot. Runtime errors are reported the
+ * same way as in the tree-walking interpreter.
+ */
+public final class VM {
+    public enum InterpretResult {
+        OK,
+        COMPILE_ERROR,
+        RUNTIME_ERROR
+    }
+
+    private static final int FRAMES_MAX = 10000;
+
+    private static final class CallFrame {
+        ObjClosure closure;
+        byte[] code;
+        Object[] constants;
+        int ip;
+        // Stack slot of the callee, which is local slot zero
+        int base;
+    }
+
+    // Thrown to unwind the dispatch loop after a runtime error has been reported
+    private static final class RuntimeError extends RuntimeException {
+        RuntimeError(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private Object[] stack = new Object[256];
+    private int stackTop = 0;
+
+    private final CallFrame[] frames = new CallFrame[FRAMES_MAX];
+    private int frameCount = 0;
+
+    private final Map<String, ObjGlobal> globals = new HashMap<>();
+    // Open upvalues, ordered by decreasing stack slot
+    private ObjUpvalue openUpvalues = null;
+
+    public VM() {
+        for (int i = 0; i < FRAMES_MAX; i++) {
+            frames[i] = new CallFrame();
+        }
+
+        defineNative("clock", 0, arguments -> (double) System.currentTimeMillis() / 1000.0);
+    }
+
+    /**
+     * Compiles and runs a resolved program.
+     *
+     * @param statements The top-level statements of the program
+     * @return Whether the program ran to completion
+     */
+    public InterpretResult interpret(List<Stmt> statements) {
+        ObjFunction function = new Compiler(globals).compile(statements);
+        if (function == null) return InterpretResult.COMPILE_ERROR;
+
+        ObjClosure closure = new ObjClosure(function);
+        push(closure);
+        try {
+            call(closure, 0);
+            run();
+            return InterpretResult.OK;
+        } catch (RuntimeError error) {
+            reportError(error.getMessage());
+            resetStack();
+            return InterpretResult.RUNTIME_ERROR;
+        }
+    }
+
+    private void defineNative(String name, int arity, ObjNative.NativeFn function) {
+        ObjGlobal global = new ObjGlobal(name);
+        global.value = new ObjNative(arity, function);
+        global.defined = true;
+        globals.put(name, global);
+    }
+
+    private void resetStack() {
+        Arrays.fill(stack, 0, stackTop, null);
+        stackTop = 0;
+        frameCount = 0;
+        openUpvalues = null;
+    }
+
+    private void reportError(String message) {
+        CallFrame frame = frames[frameCount - 1];
+        int line = frame.closure.function.chunk.lines[frame.ip - 1];
+        System.err.println(message + "\n[line " + line + "]");
+    }
+
+    private void push(Object value) {
+        if (stackTop == stack.length) {
+            stack = Arrays.copyOf(stack, stackTop * 2);
+        }
+        stack[stackTop++] = value;
+    }
+
+    private Object pop() {
+        Object value = stack[--stackTop];
+        stack[stackTop] = null;
+        return value;
+    }
+
+    private Object peek(int distance) {
+        return stack[stackTop - 1 - distance];
+    }
+
+    private void call(ObjClosure closure, int argCount) {
+        if (argCount != closure.function.arity) {
+            throw new RuntimeError("Expected " + closure.function.arity +
+                    " arguments but got " + argCount + ".");
+        }
+
+        if (frameCount == FRAMES_MAX) {
+            throw new RuntimeError("Stack overflow.");
+        }
+
+        CallFrame frame = frames[frameCount++];
+        frame.closure = closure;
+        frame.code = closure.function.chunk.code;
+        frame.constants = closure.function.chunk.constants;
+        frame.ip = 0;
+        frame.base = stackTop - argCount - 1;
+    }
+
+    private void callValue(Object callee, int argCount) {
+        if (callee instanceof ObjClosure) {
+            call((ObjClosure) callee, argCount);
+            return;
+        }
+
+        if (callee instanceof ObjBoundMethod) {
+            ObjBoundMethod bound = (ObjBoundMethod) callee;
+            stack[stackTop - argCount - 1] = bound.receiver;
+            call(bound.method, argCount);
+            return;
+        }
+
+        if (callee instanceof ObjClass) {
+            ObjClass klass = (ObjClass) callee;
+            stack[stackTop - argCount - 1] = new ObjInstance(klass);
+            ObjClosure initializer = klass.methods.get("init");
+            if (initializer != null) {
+                call(initializer, argCount);
+            } else if (argCount != 0) {
+                throw new RuntimeError("Expected 0 arguments but got " + argCount + ".");
+            }
+            return;
+        }
+
+        if (callee instanceof ObjNative) {
+            ObjNative fn = (ObjNative) callee;
+            if (argCount != fn.arity) {
+                throw new RuntimeError("Expected " + fn.arity +
+                        " arguments but got " + argCount + ".");
+            }
+            Object[] arguments = Arrays.copyOfRange(stack, stackTop - argCount, stackTop);
+            Object result = fn.function.call(arguments);
+            Arrays.fill(stack, stackTop - argCount - 1, stackTop, null);
+            stackTop -= argCount + 1;
+            push(result);
+            return;
+        }
+
+        throw new RuntimeError("Can only call functions and classes.");
+    }
+
+    private void invokeFromClass(ObjClass klass, String name, int argCount) {
+        ObjClosure method = klass.methods.get(name);
+        if (method == null) {
+            throw new RuntimeError("Undefined property '" + name + "'.");
+        }
+        call(method, argCount);
+    }
+
+    private void invoke(String name, int argCount) {
+        Object receiver = peek(argCount);
+        if (!(receiver instanceof ObjInstance)) {
+            throw new RuntimeError("Only instances have properties.");
+        }
+
+        ObjInstance instance = (ObjInstance) receiver;
+        // A field shadows a method of the same name.
+        Object value = instance.fields.get(name);
+        if (value != null || instance.fields.containsKey(name)) {
+            stack[stackTop - argCount - 1] = value;
+            callValue(value, argCount);
+            return;
+        }
+
+        invokeFromClass(instance.klass, name, argCount);
+    }
+
+    private ObjBoundMethod bindMethod(ObjClass klass, String name, Object receiver) {
+        ObjClosure method = klass.methods.get(name);
+        if (method == null) {
+            throw new RuntimeError("Undefined property '" + name + "'.");
+        }
+        return new ObjBoundMethod(receiver, method);
+    }
+
+    private ObjUpvalue captureUpvalue(int local) {
+        ObjUpvalue prev = null;
+        ObjUpvalue upvalue = openUpvalues;
+        while (upvalue != null && upvalue.location > local) {
+            prev = upvalue;
+            upvalue = upvalue.next;
+        }
+
+        if (upvalue != null && upvalue.location == local) return upvalue;
+
+        ObjUpvalue created = new ObjUpvalue(local);
+        created.next = upvalue;
+        if (prev == null) {
+            openUpvalues = created;
+        } else {
+            prev.next = created;
+        }
+        return created;
+    }
+
+    // Closes every open upvalue at or above the given stack slot
+    private void closeUpvalues(int last) {
+        while (openUpvalues != null && openUpvalues.location >= last) {
+            ObjUpvalue upvalue = openUpvalues;
+            upvalue.closed = stack[upvalue.location];
+            upvalue.location = -1;
+            openUpvalues = upvalue.next;
+        }
+    }
+
+    private Object readUpvalue(ObjUpvalue upvalue) {
+        return upvalue.location == -1 ? upvalue.closed : stack[upvalue.location];
+    }
+
+    private void writeUpvalue(ObjUpvalue upvalue, Object value) {
+        if (upvalue.location == -1) {
+            upvalue.closed = value;
+        } else {
+            stack[upvalue.location] = value;
+        }
+    }
+
+    private static boolean isFalsey(Object value) {
+        if (value == null) return true;
+        if (value instanceof Boolean) return !(boolean) value;
+        return false;
+    }
+
+    private static boolean valuesEqual(Object a, Object b) {
+        if (a == null) return b == null;
+        if (a instanceof Rope || b instanceof Rope) return Rope.isEqual(a, b);
+        return a.equals(b);
+    }
+
+    private static String stringify(Object value) {
+        if (value == null) return "nil";
+
+        if (value instanceof Double) {
+            String text = value.toString();
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            return text;
+        }
+
+        return value.toString();
+    }
+
+    private void checkNumberOperands() {
+        if (peek(0) instanceof Double && peek(1) instanceof Double) return;
+        throw new RuntimeError("Operands must be numbers.");
+    }
+
+    private void run() {
+        CallFrame frame = frames[frameCount - 1];
+        byte[] code = frame.code;
+        // The instruction pointer lives in a local and is stored back into the frame
+        // only when another frame takes over or an error needs its line.
+        int ip = frame.ip;
+
+        try {
+            for (;;) {
+                byte instruction = code[ip++];
+                switch (instruction) {
+                    case OpCode.CONSTANT: {
+                        push(frame.constants[readShort(code, ip += 2)]);
+                        break;
+                    }
+                    case OpCode.NIL: push(null); break;
+                    case OpCode.TRUE: push(true); break;
+                    case OpCode.FALSE: push(false); break;
+                    case OpCode.POP: pop(); break;
+                    case OpCode.GET_LOCAL: {
+                        int slot = code[ip++] & 0xff;
+                        push(stack[frame.base + slot]);
+                        break;
+                    }
+                    case OpCode.SET_LOCAL: {
+                        int slot = code[ip++] & 0xff;
+                        stack[frame.base + slot] = peek(0);
+                        break;
+                    }
+                    case OpCode.GET_GLOBAL: {
+                        ObjGlobal global = (ObjGlobal) frame.constants[readShort(code, ip += 2)];
+                        if (global.value == null) {
+                            if (!global.defined) {
+                                throw new RuntimeError("Undefined variable '" + global.name + "'.");
+                            }
+                            throw new RuntimeError("Uninitialized variable '" + global.name + "'.");
+                        }
+                        push(global.value);
+                        break;
+                    }
+                    case OpCode.DEFINE_GLOBAL: {
+                        ObjGlobal global = (ObjGlobal) frame.constants[readShort(code, ip += 2)];
+                        global.value = pop();
+                        global.defined = true;
+                        break;
+                    }
+                    case OpCode.SET_GLOBAL: {
+                        ObjGlobal global = (ObjGlobal) frame.constants[readShort(code, ip += 2)];
+                        if (!global.defined) {
+                            throw new RuntimeError("Undefined variable '" + global.name + "'.");
+                        }
+                        global.value = peek(0);
+                        break;
+                    }
+                    case OpCode.GET_UPVALUE: {
+                        int slot = code[ip++] & 0xff;
+                        push(readUpvalue(frame.closure.upvalues[slot]));
+                        break;
+                    }
+                    case OpCode.SET_UPVALUE: {
+                        int slot = code[ip++] & 0xff;
+                        writeUpvalue(frame.closure.upvalues[slot], peek(0));
+                        break;
+                    }
+                    case OpCode.GET_PROPERTY: {
+                        String name = (String) frame.constants[readShort(code, ip += 2)];
+                        if (!(peek(0) instanceof ObjInstance)) {
+                            throw new RuntimeError("Only instances have properties.");
+                        }
+
+                        ObjInstance instance = (ObjInstance) peek(0);
+                        Object value = instance.fields.get(name);
+                        if (value != null || instance.fields.containsKey(name)) {
+                            pop();
+                            push(value);
+                            break;
+                        }
+
+                        ObjBoundMethod bound = bindMethod(instance.klass, name, instance);
+                        pop();
+                        push(bound);
+                        break;
+                    }
+                    case OpCode.SET_PROPERTY: {
+                        String name = (String) frame.constants[readShort(code, ip += 2)];
+                        if (!(peek(1) instanceof ObjInstance)) {
+                            throw new RuntimeError("Only instances have fields.");
+                        }
+
+                        ObjInstance instance = (ObjInstance) peek(1);
+                        instance.fields.put(name, peek(0));
+                        Object value = pop();
+                        pop();
+                        push(value);
+                        break;
+                    }
+                    case OpCode.GET_SUPER: {
+                        String name = (String) frame.constants[readShort(code, ip += 2)];
+                        ObjClass superclass = (ObjClass) pop();
+                        ObjBoundMethod bound = bindMethod(superclass, name, peek(0));
+                        pop();
+                        push(bound);
+                        break;
+                    }
+                    case OpCode.EQUAL: {
+                        Object b = pop();
+                        Object a = pop();
+                        push(valuesEqual(a, b));
+                        break;
+                    }
+                    case OpCode.GREATER: {
+                        checkNumberOperands();
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a > b);
+                        break;
+                    }
+                    case OpCode.GREATER_EQUAL: {
+                        checkNumberOperands();
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a >= b);
+                        break;
+                    }
+                    case OpCode.LESS: {
+                        checkNumberOperands();
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a < b);
+                        break;
+                    }
+                    case OpCode.LESS_EQUAL: {
+                        checkNumberOperands();
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a <= b);
+                        break;
+                    }
+                    case OpCode.ADD: {
+                        if (peek(0) instanceof Double && peek(1) instanceof Double) {
+                            double b = (double) pop();
+                            double a = (double) pop();
+                            push(a + b);
+                        } else if (peek(0) instanceof CharSequence && peek(1) instanceof CharSequence) {
+                            CharSequence b = (CharSequence) pop();
+                            CharSequence a = (CharSequence) pop();
+                            push(Rope.concat(a, b));
+                        } else {
+                            throw new RuntimeError("Operands must be two numbers or two strings.");
+                        }
+                        break;
+                    }
+                    case OpCode.SUBTRACT: {
+                        checkNumberOperands();
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a - b);
+                        break;
+                    }
+                    case OpCode.MULTIPLY: {
+                        checkNumberOperands();
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a * b);
+                        break;
+                    }
+                    case OpCode.DIVIDE: {
+                        checkNumberOperands();
+                        if ((double) peek(0) == 0.0) {
+                            throw new RuntimeError("Division by zero.");
+                        }
+                        double b = (double) pop();
+                        double a = (double) pop();
+                        push(a / b);
+                        break;
+                    }
+                    case OpCode.NOT:
+                        push(isFalsey(pop()));
+                        break;
+                    case OpCode.NEGATE: {
+                        if (!(peek(0) instanceof Double)) {
+                            throw new RuntimeError("Operand must be a number.");
+                        }
+                        push(-(double) pop());
+                        break;
+                    }
+                    case OpCode.PRINT:
+                        System.out.println(stringify(pop()));
+                        break;
+                    case OpCode.JUMP: {
+                        int offset = readShort(code, ip += 2);
+                        ip += offset;
+                        break;
+                    }
+                    case OpCode.JUMP_IF_FALSE: {
+                        int offset = readShort(code, ip += 2);
+                        if (isFalsey(peek(0))) ip += offset;
+                        break;
+                    }
+                    case OpCode.LOOP: {
+                        int offset = readShort(code, ip += 2);
+                        ip -= offset;
+                        break;
+                    }
+                    case OpCode.CALL: {
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        callValue(peek(argCount), argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.code;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.INVOKE: {
+                        String method = (String) frame.constants[readShort(code, ip += 2)];
+                        int argCount = code[ip++] & 0xff;
+                        frame.ip = ip;
+                        invoke(method, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.code;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.SUPER_INVOKE: {
+                        String method = (String) frame.constants[readShort(code, ip += 2)];
+                        int argCount = code[ip++] & 0xff;
+                        ObjClass superclass = (ObjClass) pop();
+                        frame.ip = ip;
+                        invokeFromClass(superclass, method, argCount);
+                        frame = frames[frameCount - 1];
+                        code = frame.code;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLOSURE: {
+                        ObjFunction function = (ObjFunction) frame.constants[readShort(code, ip += 2)];
+                        ObjClosure closure = new ObjClosure(function);
+                        push(closure);
+                        for (int i = 0; i < closure.upvalues.length; i++) {
+                            boolean isLocal = code[ip++] != 0;
+                            int index = code[ip++] & 0xff;
+                            closure.upvalues[i] = isLocal
+                                    ? captureUpvalue(frame.base + index)
+                                    : frame.closure.upvalues[index];
+                        }
+                        break;
+                    }
+                    case OpCode.CLOSE_UPVALUE:
+                        closeUpvalues(stackTop - 1);
+                        pop();
+                        break;
+                    case OpCode.RETURN: {
+                        Object result = pop();
+                        closeUpvalues(frame.base);
+                        frameCount--;
+                        if (frameCount == 0) {
+                            pop();
+                            return;
+                        }
+
+                        Arrays.fill(stack, frame.base, stackTop, null);
+                        stackTop = frame.base;
+                        push(result);
+                        frame = frames[frameCount - 1];
+                        code = frame.code;
+                        ip = frame.ip;
+                        break;
+                    }
+                    case OpCode.CLASS: {
+                        String name = (String) frame.constants[readShort(code, ip += 2)];
+                        push(new ObjClass(name));
+                        break;
+                    }
+                    case OpCode.INHERIT: {
+                        Object superclass = peek(1);
+                        if (!(superclass instanceof ObjClass)) {
+                            throw new RuntimeError("Superclass must be a class.");
+                        }
+
+                        ObjClass subclass = (ObjClass) peek(0);
+                        subclass.methods.putAll(((ObjClass) superclass).methods);
+                        pop(); // Subclass.
+                        break;
+                    }
+                    case OpCode.METHOD: {
+                        String name = (String) frame.constants[readShort(code, ip += 2)];
+                        ObjClosure method = (ObjClosure) peek(0);
+                        ObjClass klass = (ObjClass) peek(1);
+                        klass.methods.put(name, method);
+                        pop();
+                        break;
+                    }
+                    default:
+                        throw new IllegalStateException("Unknown opcode " + instruction);
+                }
+            }
+        } catch (RuntimeError error) {
+            frame.ip = ip;
+            throw error;
+        }
+    }
+
+    // Reads the two-byte operand that ends just before the given offset
+    private static int readShort(byte[] code, int end) {
+        return ((code[end - 2] & 0xff) << 8) | (code[end - 1] & 0xff);
+    }
+}